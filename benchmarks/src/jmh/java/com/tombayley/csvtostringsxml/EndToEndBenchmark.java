@@ -0,0 +1,75 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A full {@link CsvToStringsXml#start()}, from the TSV and existing res directory to written files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    @Param({"10", "80"})
+    public int locales;
+
+    @Param({"40"})
+    public int stringLength;
+
+    @Param({"0", "100"})
+    public int docTypeEntities;
+
+    // 0 runs every locale on the calling thread
+    @Param({"0", "4"})
+    public int threads;
+
+    @Param({"false", "true"})
+    public boolean streamingMerge;
+
+    @Param({"false", "true"})
+    public boolean offHeapTranslations;
+
+    protected SyntheticTranslations data;
+    protected ExecutorService executorService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = SyntheticTranslations.generate(rows, locales, stringLength, docTypeEntities);
+        if (threads > 0) executorService = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (executorService != null) executorService.shutdown();
+        data.delete();
+    }
+
+    // Written to an empty directory each time, as files with the same bytes aren't rewritten
+    @Benchmark
+    public void start(OutputDirState outputDir) {
+        CsvToStringsXml.CsvToStringsXmlBuilder builder = data.newBuilder()
+                .setOutputPath(outputDir.dir.toString())
+                .setExecutorService(executorService)
+                .setStreamingMerge(streamingMerge)
+                .setOffHeapTranslations(offHeapTranslations);
+        new CsvToStringsXml(builder).start();
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * An empty output directory for each invocation, so every file is really written instead of being
+ * found unchanged. Creating and deleting it isn't part of the measured time.
+ */
+@State(Scope.Thread)
+public class OutputDirState {
+
+    public Path dir;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("csvtostringsxml-output");
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        SyntheticTranslations.deleteDir(dir);
+    }
+
+}
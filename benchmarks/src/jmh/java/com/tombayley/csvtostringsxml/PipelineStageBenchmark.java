@@ -0,0 +1,192 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * One benchmark per stage of {@link CsvToStringsXml#start()}, each fed with the output of the
+ * stages before it so they can be measured on their own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class PipelineStageBenchmark {
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    @Param({"10", "80"})
+    public int locales;
+
+    @Param({"40"})
+    public int stringLength;
+
+    @Param({"0", "100"})
+    public int docTypeEntities;
+
+    protected SyntheticTranslations data;
+    protected CsvToStringsXml converter;
+    // Same config with the built in validation rules on
+    protected CsvToStringsXml validatingConverter;
+    // Same config with a resource cache, filled during setup
+    protected CsvToStringsXml cachingConverter;
+
+    protected List<String[]> csv;
+    // Sheet merged with the existing resources, before fixTranslations
+    protected TranslationTable mergedTranslations;
+    // After fixTranslations, ready to be written
+    protected TranslationTable fixedTranslations;
+
+    protected final CharArrayWriter xmlBuffer = new CharArrayWriter();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        data = SyntheticTranslations.generate(rows, locales, stringLength, docTypeEntities);
+        converter = new CsvToStringsXml(data.newBuilder());
+        validatingConverter = new CsvToStringsXml(data.newBuilder().setValidation(true));
+        cachingConverter = new CsvToStringsXml(data.newBuilder()
+                .setResourceCacheDirPath(data.dir.resolve("cache").toString()));
+        readExistingResourcesCached();
+
+        try (Reader reader = data.openSpreadsheet()) {
+            csv = converter.readCsv(reader);
+        }
+
+        mergedTranslations = converter.convertCsvListToTable(csv);
+        converter.removeEmptyTranslations(mergedTranslations);
+        converter.addExistingStringXmlTranslationsToNewTranslations(readExistingResources(), mergedTranslations);
+
+        fixedTranslations = mergedTranslations.copy();
+        converter.fixTranslations(fixedTranslations, new ConversionResult());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        data.delete();
+    }
+
+    @Benchmark
+    public List<String[]> readCsv() throws IOException {
+        try (Reader reader = data.openSpreadsheet()) {
+            return converter.readCsv(reader);
+        }
+    }
+
+    @Benchmark
+    public TranslationTable readCsvToTable() throws IOException {
+        try (Reader reader = data.openSpreadsheet()) {
+            return converter.readCsvToTable(reader);
+        }
+    }
+
+    @Benchmark
+    public TranslationTable readMappedTsvToTable() throws IOException {
+        return converter.readMappedTsvToTable(data.spreadsheet);
+    }
+
+    // Chunks run on the common ForkJoinPool, as the converter has no executor
+    @Benchmark
+    public List<String[]> readTsvInParallel() throws IOException {
+        try (MappedTsvReader tsvReader = new MappedTsvReader(data.spreadsheet, StandardCharsets.UTF_8)) {
+            tsvReader.setLimitColumnsToHeader(true);
+            return converter.readTsvInParallel(tsvReader);
+        }
+    }
+
+    @Benchmark
+    public TranslationTable convertCsvListToTable() {
+        return converter.convertCsvListToTable(csv);
+    }
+
+    @Benchmark
+    public HashMap<String, LinkedHashMap<String, String>> readExistingResources() throws Exception {
+        return converter.readResStringFiles(data.existingResourcesDir.toFile());
+    }
+
+    // Both versions are read, so this includes reading the sheet twice
+    @Benchmark
+    public SheetDiff diffSpreadsheets() throws IOException {
+        return converter.diff(data.spreadsheet, data.spreadsheet);
+    }
+
+    // Every file is unchanged, so all are loaded from the cache
+    @Benchmark
+    public HashMap<String, LinkedHashMap<String, String>> readExistingResourcesCached() throws Exception {
+        return cachingConverter.readResStringFiles(data.existingResourcesDir.toFile());
+    }
+
+    @Benchmark
+    public TranslationTable fixTranslations(FixState state) {
+        converter.fixTranslations(state.translations, new ConversionResult());
+        return state.translations;
+    }
+
+    @Benchmark
+    public TranslationTable fixTranslationsWithValidation(FixState state) {
+        validatingConverter.fixTranslations(state.translations, new ConversionResult());
+        return state.translations;
+    }
+
+    @Benchmark
+    public int writeTranslations() throws IOException {
+        int length = 0;
+        for (String localeCode : fixedTranslations.getLocaleCodes()) {
+            xmlBuffer.reset();
+            converter.writeTranslation(fixedTranslations, localeCode, xmlBuffer);
+            length += xmlBuffer.size();
+        }
+        return length;
+    }
+
+    // Written to an empty directory each time, as files with the same bytes aren't rewritten
+    @Benchmark
+    public void saveTranslations(OutputDirState outputDir) {
+        converter.saveTranslations(fixedTranslations, new DirectoryOutputSink(outputDir.dir), new ConversionResult());
+    }
+
+    @Benchmark
+    public InMemoryOutputSink saveTranslationsInMemory() {
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+        converter.saveTranslations(fixedTranslations, sink, new ConversionResult());
+        return sink;
+    }
+
+    @Benchmark
+    public byte[] saveTranslationsToZip() {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        converter.saveTranslations(fixedTranslations, new ZipOutputSink(zip, Deflater.DEFAULT_COMPRESSION), new ConversionResult());
+        return zip.toByteArray();
+    }
+
+    // fixTranslations rewrites the table in place, so each invocation gets a fresh copy
+    @State(Scope.Thread)
+    public static class FixState {
+        TranslationTable translations;
+
+        @Setup(Level.Invocation)
+        public void setUp(PipelineStageBenchmark benchmark) {
+            translations = benchmark.mergedTranslations.copy();
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generates a translations TSV and an existing res directory of a given size in a temp directory.
+ *
+ * Text is made of random words with the things the pipeline has to rewrite mixed in: apostrophes,
+ * "...", " & " and DocType entity values.
+ */
+public class SyntheticTranslations {
+
+    public static final String DEFAULT_LOCALE_CODE = "en";
+    public static final String STRING_ID_COLUMN_TITLE = "Name";
+
+    protected static final String[] WORDS = {
+            "alpha", "bravo", "charlie", "delta", "echo", "it's", "...", "&", "settings", "open",
+    };
+
+    public final int rows;
+    public final int locales;
+    public final int stringLength;
+    public final int docTypeEntities;
+    // DocType is immutable and converters only read it, so every builder shares this one
+    public final CsvToStringsXml.DocType docType;
+
+    public final Path dir;
+    public final Path spreadsheet;
+    public final Path existingResourcesDir;
+    public final Path outputDir;
+
+    protected SyntheticTranslations(int rows, int locales, int stringLength, int docTypeEntities) throws IOException {
+        this.rows = rows;
+        this.locales = locales;
+        this.stringLength = stringLength;
+        this.docTypeEntities = docTypeEntities;
+        docType = createDocType();
+
+        dir = Files.createTempDirectory("csvtostringsxml-bench");
+        spreadsheet = dir.resolve("translations.tsv");
+        existingResourcesDir = dir.resolve("android_strings");
+        outputDir = dir.resolve("NEW_android_strings");
+    }
+
+    public static SyntheticTranslations generate(int rows, int locales, int stringLength, int docTypeEntities) throws IOException {
+        SyntheticTranslations data = new SyntheticTranslations(rows, locales, stringLength, docTypeEntities);
+        Random random = new Random(42);
+        data.writeSpreadsheet(random);
+        data.writeExistingResources(random);
+        return data;
+    }
+
+    public static String localeCode(int locale) {
+        return locale == 0 ? DEFAULT_LOCALE_CODE : "l" + locale;
+    }
+
+    public static String stringId(int row) {
+        return "string_" + row;
+    }
+
+    public static String docTypeValue(int entity) {
+        return "Brand" + entity + " Name";
+    }
+
+    protected CsvToStringsXml.DocType createDocType() {
+        CsvToStringsXml.DocTypeBuilder docTypeBuilder = new CsvToStringsXml.DocTypeBuilder();
+        for (int entity = 0; entity < docTypeEntities; entity++) {
+            docTypeBuilder.addItem("brand" + entity, docTypeValue(entity));
+        }
+        return docTypeBuilder.build();
+    }
+
+    public CsvToStringsXml.CsvToStringsXmlBuilder newBuilder() {
+        return new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setExistingResourcesDirPath(existingResourcesDir.toString())
+                .setSpreadsheetPath(spreadsheet.toString())
+                .setOutputPath(outputDir.toString())
+                .setSpreadsheetDelimiter('\t')
+                .setDefaultLocaleCode(DEFAULT_LOCALE_CODE)
+                .setDocType(docType)
+                .setStringIdColumnTitle(STRING_ID_COLUMN_TITLE);
+    }
+
+    public Reader openSpreadsheet() throws IOException {
+        return new InputStreamReader(Files.newInputStream(spreadsheet), StandardCharsets.UTF_8);
+    }
+
+    public void delete() throws IOException {
+        deleteDir(dir);
+    }
+
+    public static void deleteDir(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    protected void writeSpreadsheet(Random random) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(spreadsheet, StandardCharsets.UTF_8)) {
+            writer.write(STRING_ID_COLUMN_TITLE);
+            for (int locale = 0; locale < locales; locale++) {
+                writer.write('\t');
+                writer.write(localeCode(locale));
+            }
+            writer.write('\n');
+
+            for (int row = 0; row < rows; row++) {
+                writer.write(stringId(row));
+                for (int locale = 0; locale < locales; locale++) {
+                    writer.write('\t');
+                    // Leave some cells empty so existing translations get merged in
+                    if (random.nextInt(20) == 0) continue;
+                    writer.write(randomText(random));
+                }
+                writer.write('\n');
+            }
+        }
+    }
+
+    protected void writeExistingResources(Random random) throws IOException {
+        for (int locale = 0; locale < locales; locale++) {
+            String localeCode = localeCode(locale);
+            Path valuesDir = existingResourcesDir.resolve(locale == 0 ? "values" : "values-" + localeCode);
+            Files.createDirectories(valuesDir);
+
+            try (Writer writer = Files.newBufferedWriter(valuesDir.resolve("strings.xml"), StandardCharsets.UTF_8)) {
+                writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n");
+                writer.write("    <string name=\"app_name\" translatable=\"false\">App</string>\n");
+
+                // Overlaps the sheet for the first half, then adds strings only found here
+                for (int row = rows / 2; row < rows + rows / 10; row++) {
+                    writer.write("    <string name=\"" + stringId(row) + "\">"
+                            + randomText(random).replace("&", "&amp;") + "</string>\n");
+                }
+                writer.write("</resources>\n");
+            }
+        }
+    }
+
+    protected String randomText(Random random) {
+        StringBuilder stringBuilder = new StringBuilder(stringLength + 16);
+        while (stringBuilder.length() < stringLength) {
+            if (stringBuilder.length() > 0) stringBuilder.append(' ');
+
+            if (docTypeEntities > 0 && random.nextInt(8) == 0) {
+                stringBuilder.append(docTypeValue(random.nextInt(docTypeEntities)));
+            } else {
+                stringBuilder.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+        }
+        return stringBuilder.toString();
+    }
+
+}
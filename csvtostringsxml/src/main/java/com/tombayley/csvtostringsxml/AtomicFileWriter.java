@@ -0,0 +1,132 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replaces files with complete contents only: each file is written to a temp file next to it and
+ * moved over the old one, so readers see either the old or the new file, never half of one. Files
+ * that already hold exactly the new bytes are left alone.
+ *
+ * One writer is used per run, and can be shared by threads writing different files.
+ */
+public class AtomicFileWriter {
+
+    protected static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    protected final CsvToStringsXml.FsyncPolicy fsyncPolicy;
+
+    // Written files and their directories, synced by finish() under FsyncPolicy.AT_END
+    protected final Set<Path> unsyncedFiles = ConcurrentHashMap.newKeySet();
+    protected final Set<Path> unsyncedDirs = ConcurrentHashMap.newKeySet();
+
+    public AtomicFileWriter(CsvToStringsXml.FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    /**
+     * @return false if the file already held these bytes, and so wasn't written
+     */
+    public boolean write(Path file, byte[] bytes) throws IOException {
+        if (hasContents(file, bytes)) return false;
+
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+
+        // Not Files.createTempFile, which would give the file owner-only permissions
+        Path tempFile = dir.resolve("." + file.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_FILE_SUFFIX);
+        FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (fsyncPolicy == CsvToStringsXml.FsyncPolicy.PER_FILE) channel.force(true);
+            } finally {
+                channel.close();
+            }
+
+            move(tempFile, file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        switch (fsyncPolicy) {
+            case PER_FILE:
+                // The move is only durable once the directory entry is
+                syncDir(dir);
+                break;
+            case AT_END:
+                unsyncedFiles.add(file);
+                unsyncedDirs.add(dir);
+                break;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Syncs everything written since the last call, under {@link CsvToStringsXml.FsyncPolicy#AT_END}.
+     */
+    public void finish() throws IOException {
+        for (Path file : unsyncedFiles) {
+            syncFile(file);
+        }
+        unsyncedFiles.clear();
+
+        for (Path dir : unsyncedDirs) {
+            syncDir(dir);
+        }
+        unsyncedDirs.clear();
+    }
+
+    protected boolean hasContents(Path file, byte[] bytes) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) != bytes.length) return false;
+        return Arrays.equals(Files.readAllBytes(file), bytes);
+    }
+
+    protected void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // The temp file is in the same directory, so this only happens on unusual file systems
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    protected void syncFile(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    protected void syncDir(Path dir) {
+        try {
+            FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // Some platforms, such as Windows, can't open or sync directories
+        }
+    }
+
+}
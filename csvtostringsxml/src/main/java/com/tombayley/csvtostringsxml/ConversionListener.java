@@ -0,0 +1,41 @@
+package com.tombayley.csvtostringsxml;
+
+/**
+ * Receives timings and sizes from {@link CsvToStringsXml#convert()}. Set it with
+ * {@link CsvToStringsXml.CsvToStringsXmlBuilder#setConversionListener(ConversionListener)}.
+ *
+ * Every callback gets the {@link ConversionRun} it belongs to. All runs of a converter share its
+ * listener and can run at the same time, and locale callbacks are made from the executor's threads
+ * when one is set, so implementations must be thread-safe and keep their state per run.
+ */
+public interface ConversionListener {
+
+    String STAGE_READ_SPREADSHEET = "readSpreadsheet";
+    String STAGE_READ_EXISTING_RESOURCES = "readExistingResources";
+    String STAGE_MERGE_EXISTING_RESOURCES = "mergeExistingResources";
+    String STAGE_FIX_TRANSLATIONS = "fixTranslations";
+    String STAGE_SAVE_TRANSLATIONS = "saveTranslations";
+
+    // Called before any other callback of the run
+    default void onConversionStarted(ConversionRun run) {
+    }
+
+    /**
+     * @param items          strings handled by the stage
+     * @param allocatedBytes bytes allocated during the stage by the thread running the conversion and
+     *                       by the run's tasks on the executor, or -1 if the JVM can't measure it
+     */
+    default void onStageFinished(ConversionRun run, String stage, long durationNanos, long items, long allocatedBytes) {
+    }
+
+    default void onLocaleWritten(ConversionRun run, String localeCode, long bytes) {
+    }
+
+    default void onLocaleSkipped(ConversionRun run, String localeCode) {
+    }
+
+    // Called last, also for runs that failed
+    default void onConversionFinished(ConversionRun run, long durationNanos) {
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.tombayley.csvtostringsxml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What one run of {@link CsvToStringsXml#convert()} did. Filled in while the run goes, from
+ * the executor's threads when one is set.
+ */
+public class ConversionResult {
+
+    protected volatile boolean isFinished = false;
+
+    // DocType key to locale code to references found
+    protected final ConcurrentHashMap<String, ConcurrentHashMap<String, LongAdder>> docTypeOccurrences = new ConcurrentHashMap<>();
+
+    protected final Set<String> writtenLocales = ConcurrentHashMap.newKeySet();
+    protected final Set<String> unchangedLocales = ConcurrentHashMap.newKeySet();
+    protected final Set<String> failedLocales = ConcurrentHashMap.newKeySet();
+
+    protected final ConcurrentLinkedQueue<ValidationIssue> validationIssues = new ConcurrentLinkedQueue<>();
+    protected volatile boolean hasValidationErrors = false;
+
+    /**
+     * @return false if the run stopped early, e.g. because the spreadsheet couldn't be read
+     */
+    public boolean isFinished() {
+        return isFinished;
+    }
+
+    // Locales whose strings.xml was written
+    public Set<String> getWrittenLocales() {
+        return Collections.unmodifiableSet(writtenLocales);
+    }
+
+    // Locales whose strings.xml was left alone, as its contents wouldn't have changed
+    public Set<String> getUnchangedLocales() {
+        return Collections.unmodifiableSet(unchangedLocales);
+    }
+
+    // Locales whose strings.xml couldn't be written
+    public Set<String> getFailedLocales() {
+        return Collections.unmodifiableSet(failedLocales);
+    }
+
+    /**
+     * @return problems found by the validation rules, sorted by locale and string id
+     */
+    public List<ValidationIssue> getValidationIssues() {
+        List<ValidationIssue> issues = new ArrayList<>(validationIssues);
+        issues.sort((a, b) -> {
+            int byLocale = a.getLocaleCode().compareTo(b.getLocaleCode());
+            return byLocale != 0 ? byLocale : a.getStringId().compareTo(b.getStringId());
+        });
+        return issues;
+    }
+
+    // Whether any validation issue is an error rather than a warning
+    public boolean hasValidationErrors() {
+        return hasValidationErrors;
+    }
+
+    /**
+     * @return number of references to the DocType key in the locale's strings
+     */
+    public int getDocTypeOccurrences(String docTypeKey, String localeCode) {
+        Map<String, LongAdder> occurrencesPerLocale = docTypeOccurrences.get(docTypeKey);
+        if (occurrencesPerLocale == null) return 0;
+
+        LongAdder occurrences = occurrencesPerLocale.get(localeCode);
+        return occurrences == null ? 0 : occurrences.intValue();
+    }
+
+    /**
+     * @return locale code to number of references, for locales with at least one reference to the key
+     */
+    public Map<String, Integer> getDocTypeOccurrences(String docTypeKey) {
+        Map<String, Integer> occurrences = new HashMap<>();
+        Map<String, LongAdder> occurrencesPerLocale = docTypeOccurrences.get(docTypeKey);
+        if (occurrencesPerLocale == null) return occurrences;
+
+        for (Map.Entry<String, LongAdder> localeOccurrences : occurrencesPerLocale.entrySet()) {
+            occurrences.put(localeOccurrences.getKey(), localeOccurrences.getValue().intValue());
+        }
+        return occurrences;
+    }
+
+    protected void addValidationIssue(ValidationIssue issue) {
+        validationIssues.add(issue);
+        if (issue.getSeverity() == ValidationIssue.Severity.ERROR) hasValidationErrors = true;
+    }
+
+    protected void addDocTypeOccurrences(String docTypeKey, String localeCode, int occurrences) {
+        docTypeOccurrences
+                .computeIfAbsent(docTypeKey, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(localeCode, k -> new LongAdder())
+                .add(occurrences);
+    }
+
+}
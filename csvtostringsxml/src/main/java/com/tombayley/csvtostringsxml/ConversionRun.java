@@ -0,0 +1,25 @@
+package com.tombayley.csvtostringsxml;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One run of a conversion, passed to every {@link ConversionListener} callback of the run so a
+ * listener shared by runs at the same time can keep their metrics apart.
+ */
+public class ConversionRun {
+
+    protected static final AtomicLong NEXT_ID = new AtomicLong(1);
+
+    protected final long id = NEXT_ID.getAndIncrement();
+
+    // Unique within the JVM, in the order runs were started
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return "ConversionRun " + id;
+    }
+
+}
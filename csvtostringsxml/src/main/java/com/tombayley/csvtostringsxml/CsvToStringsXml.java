@@ -1,26 +1,56 @@
 package com.tombayley.csvtostringsxml;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
 
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
 import com.opencsv.RFC4180Parser;
 import com.opencsv.RFC4180ParserBuilder;
 
-import org.apache.commons.lang3.StringUtils;
-
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -31,6 +61,7 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -43,14 +74,32 @@ public class CsvToStringsXml {
     // ==========================================
     // Config
     // ==========================================
-    protected String existingResourcesDirPath;
-    protected String spreadsheetPath;
-    protected String outputPath;
-    protected char spreadsheetDelimiter;
-    protected String defaultLocaleCode;
-    protected DocType docType;
-    protected String encoding;
-    protected String stringIdColumnTitle;
+    // Set once by the constructor, so runs can share them
+    protected final List<String> existingResourcesDirPaths;
+    protected final String spreadsheetPath;
+    protected final String outputPath;
+    protected final char spreadsheetDelimiter;
+    protected final String defaultLocaleCode;
+    protected final DocType docType;
+    protected final DocTypeReplacer docTypeReplacer;
+    protected final String encoding;
+    protected final String stringIdColumnTitle;
+    protected final ExecutorService executorService;
+    protected final boolean incremental;
+    protected final ConversionListener conversionListener;
+    protected final boolean memoryMappedSpreadsheet;
+    protected final boolean parallelSpreadsheet;
+    protected final Set<String> includedLocaleCodes;
+    protected final Set<String> excludedLocaleCodes;
+    protected final Predicate<String> stringIdFilter;
+    protected final FsyncPolicy fsyncPolicy;
+    protected final boolean zipOutput;
+    protected final int zipCompressionLevel;
+    protected final boolean streamingMerge;
+    protected final List<ValidationRule> validationRules;
+    protected final boolean failOnValidationErrors;
+    protected final boolean offHeapTranslations;
+    protected final ResourceCache resourceCache;
 
     // ==========================================
     // Misc
@@ -70,78 +119,509 @@ public class CsvToStringsXml {
 
     protected static final String DOC_TYPE_TEMPLATE = "&%s;";
 
-    protected boolean isBuilderValid = false;
+    // Written next to outputPath in incremental mode, holding a content hash per locale
+    protected static final String MANIFEST_SUFFIX = ".csvtostringsxml-manifest";
+    // Bump when the output format changes so every locale is rewritten once
+    protected static final String MANIFEST_VERSION = "1";
+
+    // Smallest byte range of the spreadsheet parsed as one task in parallel mode
+    protected static final long MIN_SPREADSHEET_CHUNK_SIZE = 4 * 1024 * 1024;
+    // Chunks per thread, so threads that finish early can take on more
+    protected static final int SPREADSHEET_CHUNKS_PER_THREAD = 4;
+
+    // Initial size of the buffer a strings.xml is built in before being written
+    protected static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    // Reused by escapeString so each escaped string allocates only its result
+    protected static final ThreadLocal<StringBuilder> ESCAPE_BUILDER = ThreadLocal.withInitial(StringBuilder::new);
+
+    // ==========================================
+    // Input cache
+    // ==========================================
+    // Set by CsvToStringsXmlWatcher so repeated runs only re-read the files that changed
+    protected volatile boolean cacheInputs = false;
+    protected volatile CachedInput<TranslationTable> spreadsheetCache = null;
+    protected final ConcurrentHashMap<Path, CachedInput<LinkedHashMap<String, String>>> existingResourceCache = new ConcurrentHashMap<>();
+
+    protected final boolean isBuilderValid;
 
     public CsvToStringsXml(CsvToStringsXmlBuilder builder) {
-        existingResourcesDirPath = builder.existingResourcesDirPath;
+        this(builder, null, null);
+    }
 
-        if (builder.spreadsheetPath == null) {
-            print("spreadsheetPath not set");
-            return;
-        }
+    /**
+     * Used by {@link CsvToStringsXmlBatch} so its jobs share what they can.
+     *
+     * @param defaultExecutorService used if the builder has no executor. May be null
+     * @param docTypeReplacers       compiled DocTypes by DocType text, shared by converters whose
+     *                               DocTypes have the same entities in the same order. May be null
+     */
+    protected CsvToStringsXml(
+            CsvToStringsXmlBuilder builder,
+            ExecutorService defaultExecutorService,
+            ConcurrentHashMap<String, DocTypeReplacer> docTypeReplacers
+    ) {
+        existingResourcesDirPaths = Collections.unmodifiableList(new ArrayList<>(builder.existingResourcesDirPaths));
         spreadsheetPath = builder.spreadsheetPath;
-
-        if (builder.outputPath == null){
-            print("outputPath not set");
-            return;
-        }
         outputPath = builder.outputPath;
-
-        if (builder.stringIdColumnTitle == null){
-            print("stringIdColumnTitle not set");
-            return;
-        }
         stringIdColumnTitle = builder.stringIdColumnTitle;
-
         spreadsheetDelimiter = builder.spreadsheetDelimiter;
         defaultLocaleCode = builder.defaultLocaleCode;
         encoding = builder.encoding;
-        docType = builder.docType;
+        docType = builder.docType != null ? builder.docType : new DocTypeBuilder().build();
+        docTypeReplacer = docTypeReplacers == null
+                ? new DocTypeReplacer(docType.entities)
+                : docTypeReplacers.computeIfAbsent(docType.docTypeText, k -> new DocTypeReplacer(this.docType.entities));
+        executorService = builder.executorService != null ? builder.executorService : defaultExecutorService;
+        incremental = builder.incremental;
+        conversionListener = builder.conversionListener;
+        memoryMappedSpreadsheet = builder.memoryMappedSpreadsheet || builder.parallelSpreadsheet;
+        parallelSpreadsheet = builder.parallelSpreadsheet;
+        includedLocaleCodes = copyOf(builder.includedLocaleCodes);
+        excludedLocaleCodes = copyOf(builder.excludedLocaleCodes);
+        stringIdFilter = builder.stringIdFilter;
+        fsyncPolicy = builder.fsyncPolicy;
+        zipOutput = builder.zipOutput;
+        zipCompressionLevel = builder.zipCompressionLevel;
+        streamingMerge = builder.streamingMerge;
+        List<ValidationRule> rules = new ArrayList<>();
+        if (builder.validation) rules.addAll(ValidationRules.defaults());
+        rules.addAll(builder.validationRules);
+        validationRules = Collections.unmodifiableList(rules);
+        failOnValidationErrors = builder.failOnValidationErrors;
+        offHeapTranslations = builder.offHeapTranslations;
+        resourceCache = builder.resourceCacheDirPath == null ? null
+                : new ResourceCache(Paths.get(builder.resourceCacheDirPath), builder.resourceCacheMaxBytes, encoding);
+
+        isBuilderValid = isValid();
+    }
+
+    protected boolean isValid() {
+        if (stringIdColumnTitle == null){
+            print("stringIdColumnTitle not set");
+            return false;
+        }
+
+        // Locales are validated as they are written, so an error can't stop the locales before it
+        if (streamingMerge && failOnValidationErrors) {
+            print("failOnValidationErrors can't be used with streamingMerge");
+            return false;
+        }
+
+        // The manifest describes an output directory, and a zip is rewritten whole on any change
+        if (incremental && zipOutput) {
+            print("incremental can't be used with zipOutput");
+            return false;
+        }
 
-        isBuilderValid = true;
+        return true;
+    }
+
+    protected static Set<String> copyOf(Set<String> set) {
+        return set == null ? null : Collections.unmodifiableSet(new HashSet<>(set));
     }
 
     public void start() {
+        start(null);
+    }
+
+    // Converts the locales as in convert(Set), then prints a summary
+    protected void start(Set<String> localeCodes) {
+        ConversionResult result = convert(localeCodes);
+        printValidationIssues(result);
+        if (!result.isFinished()) return;
+
+        print("DONE");
+
+        printDocTypeOccurrences(result);
+    }
+
+    /**
+     * Runs a conversion and returns what it did. Runs keep their state to themselves, so one
+     * converter can run any number of conversions, at the same time if needed.
+     */
+    public ConversionResult convert() {
+        return convert((Set<String>) null);
+    }
+
+    /**
+     * Runs a conversion of only some of the sheet's locales, e.g. those in
+     * {@link SheetDiff#getChangedLocales()}, or for {@link CsvToStringsXmlWatcher} when a change can
+     * only affect those. The other locales aren't merged, fixed or written, and keep their hashes in
+     * incremental mode. The default locale is converted too if there are validation rules.
+     *
+     * @param localeCodes locales to convert, or null for every locale
+     */
+    public ConversionResult convert(Set<String> localeCodes) {
+        if (!hasFilePaths()) return new ConversionResult();
+
+        List<Path> resDirs = new ArrayList<>();
+        for (String existingResourcesDirPath : existingResourcesDirPaths) {
+            resDirs.add(Paths.get(existingResourcesDirPath));
+        }
+
+        // Every locale is validated against the default locale's strings, as merged
+        if (localeCodes != null && !validationRules.isEmpty()) {
+            if (localeCodes.contains(defaultLocaleCode)) {
+                localeCodes = null;
+            } else {
+                localeCodes = new HashSet<>(localeCodes);
+                localeCodes.add(defaultLocaleCode);
+            }
+        }
+
+        Set<String> convertedLocaleCodes = localeCodes;
+        SpreadsheetSource spreadsheetSource = convertedLocaleCodes == null
+                ? this::readSpreadsheet
+                : () -> readSpreadsheet(convertedLocaleCodes);
+
+        ConversionResult result;
+        if (streamingMerge && !resDirs.isEmpty()) {
+            result = convert(spreadsheetSource, null, resDirs, createOutputSink());
+        } else {
+            result = convert(
+                    spreadsheetSource,
+                    // Only locales in the sheet can be merged, so other values-* directories aren't read
+                    resDirs.isEmpty() ? null : sheetLocaleCodes -> readResStringFiles(resDirs, sheetLocaleCodes),
+                    null,
+                    createOutputSink()
+            );
+        }
+
+        if (resourceCache != null && !resDirs.isEmpty()) {
+            try {
+                resourceCache.trim();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts a spreadsheet file without the paths set on the builder.
+     *
+     * @param existingTranslations locale code to string id to text, as read from strings.xml files,
+     *                             or null if there are none
+     */
+    public ConversionResult convert(Path spreadsheet, Map<String, ? extends Map<String, String>> existingTranslations, OutputSink sink) {
+        return convert(() -> readSpreadsheet(spreadsheet), toExistingTranslationsSource(existingTranslations), null, sink);
+    }
+
+    /**
+     * Converts a spreadsheet read from a stream in the converter's encoding. The stream isn't closed.
+     *
+     * @see #convert(Path, Map, OutputSink)
+     */
+    public ConversionResult convert(InputStream spreadsheet, Map<String, ? extends Map<String, String>> existingTranslations, OutputSink sink) {
+        return convert(() -> readCsvToTable(new InputStreamReader(spreadsheet, encoding)), toExistingTranslationsSource(existingTranslations), null, sink);
+    }
+
+    /**
+     * Converts a spreadsheet read from a reader. The reader isn't closed.
+     *
+     * @see #convert(Path, Map, OutputSink)
+     */
+    public ConversionResult convert(Reader spreadsheet, Map<String, ? extends Map<String, String>> existingTranslations, OutputSink sink) {
+        return convert(() -> readCsvToTable(spreadsheet), toExistingTranslationsSource(existingTranslations), null, sink);
+    }
+
+    /**
+     * Converts spreadsheet rows that have already been parsed, header row first.
+     *
+     * @see #convert(Path, Map, OutputSink)
+     */
+    public ConversionResult convert(Iterator<String[]> rows, Map<String, ? extends Map<String, String>> existingTranslations, OutputSink sink) {
+        return convert(() -> convertCsvRowsToTable(rows), toExistingTranslationsSource(existingTranslations), null, sink);
+    }
+
+    /**
+     * Compares the spreadsheet with an earlier version of it. Both are read with the converter's
+     * settings and filters, so only strings a conversion would use are compared.
+     */
+    public SheetDiff diff(Path previousSpreadsheet) throws IOException {
+        if (spreadsheetPath == null) throw new IllegalStateException("spreadsheetPath not set");
+        return diff(previousSpreadsheet, Paths.get(spreadsheetPath));
+    }
+
+    // Compares two versions of a spreadsheet, see diff(Path)
+    public SheetDiff diff(Path previousSpreadsheet, Path spreadsheet) throws IOException {
+        SheetDiff.Fingerprints previous = SheetDiff.fingerprint(readSpreadsheet(previousSpreadsheet));
+        return SheetDiff.compare(previous, readSpreadsheet(spreadsheet));
+    }
+
+    /**
+     * Compares the spreadsheet with the strings.xml files in a res directory, e.g. the app's current
+     * strings. The res strings are merged into the sheet and both are fixed as a conversion would,
+     * so strings that would be written the same count as unchanged, including strings only in the
+     * res directory. As a conversion keeps every string it merges, none count as removed. Only the
+     * sheet's locales are compared, and strings marked translatable="false" aren't, as they aren't
+     * read from strings.xml files.
+     */
+    public SheetDiff diffWithResources(Path resDir) throws IOException, XMLStreamException {
+        if (spreadsheetPath == null) throw new IllegalStateException("spreadsheetPath not set");
+
+        TranslationTable sheet = readSpreadsheet(Paths.get(spreadsheetPath));
+        removeEmptyTranslations(sheet);
+
+        TranslationTable existing = new TranslationTable();
+        HashMap<String, LinkedHashMap<String, String>> existingTranslations =
+                readResStringFiles(Collections.singletonList(resDir), sheet.getLocaleCodes());
+        for (String localeCode : getMergeOrder(existingTranslations.keySet())) {
+            existing.putAllIfAbsent(localeCode, existingTranslations.get(localeCode));
+        }
+        addExistingStringXmlTranslationsToNewTranslations(existingTranslations, sheet);
+
+        // Only the fixed text matters here, not what fixing reports
+        ConversionResult result = new ConversionResult();
+        for (String localeCode : existing.getLocaleCodes()) {
+            fixTranslation(existing, localeCode, null, result);
+        }
+        SheetDiff.Fingerprints previous = SheetDiff.fingerprint(existing);
+
+        for (String localeCode : sheet.getLocaleCodes()) {
+            fixTranslation(sheet, localeCode, null, result);
+        }
+        return SheetDiff.compare(previous, sheet);
+    }
+
+    /**
+     * @param existingSource  null if there are no existing translations to merge
+     * @param streamedResDirs res directories merged with the streaming merge, or null. Not used
+     *                        together with existingSource
+     */
+    protected ConversionResult convert(
+            SpreadsheetSource spreadsheetSource,
+            ExistingTranslationsSource existingSource,
+            List<Path> streamedResDirs,
+            OutputSink sink
+    ) {
+        ConversionResult result = new ConversionResult();
+
         if (!isBuilderValid) {
             print("Builder not valid");
-            return;
+            return result;
         }
 
-        List<String[]> newTranslationsCsv;
+        StageTimer stageTimer = new StageTimer(conversionListener);
+        stageTimer.start();
         try {
-            InputStream inputStream = new FileInputStream(new File(spreadsheetPath));
-            newTranslationsCsv = readCsv(new InputStreamReader(inputStream, encoding));
-            inputStream.close();
+            runStages(spreadsheetSource, existingSource, streamedResDirs, sink, stageTimer, result);
+        } finally {
+            // On every path, so a listener never carries a failed run's stages into the next one
+            stageTimer.finish();
+        }
+        return result;
+    }
+
+    // The stages of convert(SpreadsheetSource, ExistingTranslationsSource, List, OutputSink), filling in the result
+    protected void runStages(
+            SpreadsheetSource spreadsheetSource,
+            ExistingTranslationsSource existingSource,
+            List<Path> streamedResDirs,
+            OutputSink sink,
+            StageTimer stageTimer,
+            ConversionResult result
+    ) {
+        TranslationTable newTranslations;
+        try {
+            newTranslations = spreadsheetSource.read();
         } catch (IOException e) {
             e.printStackTrace();
             return;
         }
 
-        HashMap<String, LinkedHashMap<String, String>> newTranslations = convertCsvListToHashMap(newTranslationsCsv);
         removeEmptyTranslations(newTranslations);
+        stageTimer.finishStage(ConversionListener.STAGE_READ_SPREADSHEET, newTranslations.count());
 
-        if (existingResourcesDirPath != null) {
-            HashMap<String, Document> stringDocumentXmls;
+        if (existingSource != null) {
+            HashMap<String, LinkedHashMap<String, String>> existingTranslations;
             try {
-                stringDocumentXmls = readResStringFiles(new File(existingResourcesDirPath));
-            } catch (IOException | ParserConfigurationException | SAXException e) {
+                existingTranslations = existingSource.read(newTranslations.getLocaleCodes());
+            } catch (IOException | XMLStreamException e) {
                 e.printStackTrace();
                 return;
             }
+            stageTimer.finishStage(ConversionListener.STAGE_READ_EXISTING_RESOURCES, countStrings(existingTranslations));
 
-            HashMap<String, LinkedHashMap<String, String>> existingTranslations = convertStringXmlsToHashMap(stringDocumentXmls);
             addExistingStringXmlTranslationsToNewTranslations(existingTranslations, newTranslations);
+            stageTimer.finishStage(ConversionListener.STAGE_MERGE_EXISTING_RESOURCES, newTranslations.count());
         }
 
-        fixTranslations(newTranslations);
-        saveTranslations(newTranslations);
+        if (streamedResDirs != null) {
+            LinkedHashMap<String, List<Path>> streamedFiles;
+            try {
+                streamedFiles = addExistingStringIds(streamedResDirs, newTranslations);
+            } catch (IOException | XMLStreamException e) {
+                e.printStackTrace();
+                return;
+            }
+            stageTimer.finishStage(ConversionListener.STAGE_READ_EXISTING_RESOURCES, newTranslations.getRowCount());
+
+            // Merging, fixing and validating happen per locale as it is written, so they are timed as
+            // part of saving. Existing strings of the default locale aren't merged yet when other
+            // locales are validated, so only its strings from the sheet are compared with
+            String[] defaultTexts = getDefaultTexts(newTranslations);
+            saveTranslations(newTranslations, sink, result, localeCode -> {
+                List<Path> files = streamedFiles.get(localeCode);
+                if (files != null) mergeExistingStrings(newTranslations, localeCode, files);
+                fixTranslation(newTranslations, localeCode, defaultTexts, result);
+            });
+            stageTimer.finishStage(ConversionListener.STAGE_SAVE_TRANSLATIONS, result.writtenLocales.size() + result.unchangedLocales.size());
+
+            result.isFinished = true;
+            return;
+        }
 
-        print("DONE");
+        fixTranslations(newTranslations, result);
+        stageTimer.finishStage(ConversionListener.STAGE_FIX_TRANSLATIONS, newTranslations.count());
+
+        if (failOnValidationErrors && result.hasValidationErrors()) {
+            print("Validation errors found, nothing written");
+            return;
+        }
+
+        saveTranslations(newTranslations, sink, result);
+        stageTimer.finishStage(ConversionListener.STAGE_SAVE_TRANSLATIONS, newTranslations.count());
+
+        result.isFinished = true;
+    }
+
+    protected boolean hasFilePaths() {
+        if (spreadsheetPath == null) {
+            print("spreadsheetPath not set");
+            return false;
+        }
+
+        if (outputPath == null){
+            print("outputPath not set");
+            return false;
+        }
+
+        return true;
+    }
+
+    // Where convert() writes to: a res directory at outputPath, or with zipOutput a zip file there
+    protected OutputSink createOutputSink() {
+        if (zipOutput) return new ZipOutputSink(Paths.get(outputPath), zipCompressionLevel, fsyncPolicy);
+        return new DirectoryOutputSink(Paths.get(outputPath), fsyncPolicy);
+    }
+
+    protected ExistingTranslationsSource toExistingTranslationsSource(Map<String, ? extends Map<String, String>> existingTranslations) {
+        if (existingTranslations == null) return null;
+        return localeCodes -> copyExistingTranslations(existingTranslations, localeCodes);
+    }
+
+    // Keeps what reading the same strings from strings.xml files would keep, and never changes the given maps
+    protected HashMap<String, LinkedHashMap<String, String>> copyExistingTranslations(
+            Map<String, ? extends Map<String, String>> translations,
+            Set<String> localeCodes
+    ) {
+        HashMap<String, LinkedHashMap<String, String>> copy = new HashMap<>();
+
+        for (Map.Entry<String, ? extends Map<String, String>> translation : translations.entrySet()) {
+            if (!localeCodes.contains(translation.getKey())) continue;
+
+            LinkedHashMap<String, String> strings = new LinkedHashMap<>();
+            for (Map.Entry<String, String> string : translation.getValue().entrySet()) {
+                if (isStringIdWanted(string.getKey())) strings.put(string.getKey(), string.getValue());
+            }
+            copy.put(translation.getKey(), strings);
+        }
+
+        return copy;
+    }
+
+    protected TranslationTable readSpreadsheet() throws IOException {
+        Path path = Paths.get(spreadsheetPath);
 
-        printDocTypeOccurrences();
+        CachedInput<TranslationTable> cached = spreadsheetCache;
+        // Later stages rewrite the table in place, so the cached one is never handed out
+        if (cacheInputs && cached != null && cached.isCurrent(path)) return cached.value.copy();
+
+        CachedInput<TranslationTable> input = new CachedInput<>(path);
+        input.value = readSpreadsheet(path);
+
+        if (!cacheInputs) return input.value;
+
+        spreadsheetCache = input;
+        return input.value.copy();
+    }
+
+    /**
+     * The cached spreadsheet with only the given locales. If it was read again since the locales were
+     * chosen any locale can have changed, so it is returned with every locale.
+     */
+    protected TranslationTable readSpreadsheet(Set<String> localeCodes) throws IOException {
+        CachedInput<TranslationTable> chosenFrom = spreadsheetCache;
+        TranslationTable table = readSpreadsheet();
+        if (chosenFrom == null || spreadsheetCache != chosenFrom) return table;
+
+        for (String localeCode : new ArrayList<>(table.getLocaleCodes())) {
+            if (!localeCodes.contains(localeCode)) table.removeLocale(localeCode);
+        }
+        return table;
+    }
+
+    /**
+     * Reads the spreadsheet again after it changed, keeping it for the next run.
+     *
+     * @return locales whose cells changed since it was last read, or null if that isn't known or
+     * rows or locales were added, removed or moved, which can change every locale
+     */
+    protected Set<String> readChangedSpreadsheetLocales() throws IOException {
+        CachedInput<TranslationTable> previous = spreadsheetCache;
+        spreadsheetCache = null;
+
+        TranslationTable current = readSpreadsheet();
+        if (previous == null || !hasSameLayout(previous.value, current)) return null;
+
+        // No longer cached, so its locales can be taken apart
+        return new HashSet<>(SheetDiff.compare(SheetDiff.fingerprint(previous.value), current).getChangedLocales());
+    }
+
+    // Whether two tables have the same string ids in the same order, and the same locales
+    protected static boolean hasSameLayout(TranslationTable a, TranslationTable b) {
+        if (a.getRowCount() != b.getRowCount() || !a.getLocaleCodes().equals(b.getLocaleCodes())) return false;
+
+        for (int row = 0; row < a.getRowCount(); row++) {
+            if (!a.getStringId(row).equals(b.getStringId(row))) return false;
+        }
+        return true;
+    }
+
+    protected TranslationTable readSpreadsheet(Path path) throws IOException {
+        if (memoryMappedSpreadsheet && MappedTsvReader.isSupported(Charset.forName(encoding))) {
+            try {
+                return readMappedTsvToTable(path);
+            } catch (MappedTsvReader.IrregularQuotingException e) {
+                print("Irregular quoting, reading spreadsheet with OpenCSV instead: " + e.getMessage());
+            }
+        }
+
+        InputStream inputStream = new FileInputStream(path.toFile());
+        try {
+            return readCsvToTable(new InputStreamReader(inputStream, encoding));
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Drops the cached contents of a changed input file, so the next run reads it again.
+     */
+    protected void invalidateCachedInput(Path path) {
+        path = path.toAbsolutePath().normalize();
+        if (path.equals(Paths.get(spreadsheetPath).toAbsolutePath().normalize())) spreadsheetCache = null;
+        existingResourceCache.remove(path);
     }
 
-    protected void printDocTypeOccurrences() {
+    protected void invalidateCachedInputs() {
+        spreadsheetCache = null;
+        existingResourceCache.clear();
+    }
+
+    protected void printDocTypeOccurrences(ConversionResult result) {
         String template = "%s: %s/%s,\t";
 
         print("\n==========================");
@@ -153,11 +633,14 @@ public class CsvToStringsXml {
             int expectedOccurrences = docTypeItem.expectedOccurrences;
             if (expectedOccurrences == DocType.NOT_SET) continue;
 
+            Map<String, LongAdder> occurrencesPerLocale = result.docTypeOccurrences.get(docTypeKey);
+            if (occurrencesPerLocale == null) continue;
+
             StringBuilder stringBuilder = new StringBuilder();
 
-            for (Map.Entry<String, Integer> localeOccurrences : docTypeItem.actualOccurrencesPerLocale.entrySet()) {
+            for (Map.Entry<String, LongAdder> localeOccurrences : occurrencesPerLocale.entrySet()) {
                 String localeCode = localeOccurrences.getKey();
-                Integer occurrences = localeOccurrences.getValue();
+                int occurrences = localeOccurrences.getValue().intValue();
 
                 if (occurrences == expectedOccurrences) continue;
                 stringBuilder.append(String.format(template, localeCode, occurrences, expectedOccurrences));
@@ -173,88 +656,441 @@ public class CsvToStringsXml {
         print("==========================\n");
     }
 
-    protected void saveTranslations(HashMap<String, LinkedHashMap<String, String>> translations) {
-        for (Map.Entry<String, LinkedHashMap<String, String>> translation : translations.entrySet()) {
-            File dir = new File(
-                    outputPath
-                            + File.separator
-                            + STRING_VALUES_DIR_PREFIX
-                            + (translation.getKey().equals(defaultLocaleCode) ? "" : "-" + translation.getKey())
-            );
-            dir.mkdirs();
+    protected void saveTranslations(TranslationTable translations, OutputSink sink, ConversionResult result) {
+        saveTranslations(translations, sink, result, null);
+    }
 
-            File newStringXmlFile = new File(dir, STRINGS_XML);
-            try {
-                newStringXmlFile.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
+    /**
+     * @param preparer if set, each locale is prepared just before it is written and cleared from the
+     *                 table once written, so only the locales being written are held in full. May be null
+     */
+    protected void saveTranslations(TranslationTable translations, OutputSink sink, ConversionResult result, LocalePreparer preparer) {
+        // The manifest describes an output directory, so other sinks always get every locale
+        DirectoryOutputSink manifestSink = incremental && sink instanceof DirectoryOutputSink ? (DirectoryOutputSink) sink : null;
+        if (incremental && manifestSink == null) print("incremental only applies to a DirectoryOutputSink, writing every locale");
+
+        Properties previousHashes = manifestSink != null ? readManifest(manifestSink) : new Properties();
+        Map<String, String> hashes = new ConcurrentHashMap<>();
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (String localeCode : translations.getLocaleCodes()) {
+            tasks.add(() -> {
+                if (preparer != null) {
+                    try {
+                        preparer.prepare(localeCode);
+                    } catch (IOException | XMLStreamException e) {
+                        e.printStackTrace();
+                        result.failedLocales.add(localeCode);
+                        return null;
+                    }
+                }
+
+                try {
+                    String hash = manifestSink != null ? hashTranslation(translations, localeCode) : null;
+
+                    if (hash != null && hash.equals(previousHashes.getProperty(localeCode))
+                            && Files.exists(manifestSink.getDir().resolve(getStringsXmlPath(localeCode)))) {
+                        result.unchangedLocales.add(localeCode);
+                        hashes.put(localeCode, hash);
+                        StageTimer.localeSkipped(localeCode);
+                        return null;
+                    }
+
+                    if (saveTranslation(translations, localeCode, sink, result) && hash != null) {
+                        hashes.put(localeCode, hash);
+                    }
+                } finally {
+                    if (preparer != null) translations.clearLocale(localeCode);
+                }
+                return null;
+            });
+        }
+
+        try {
+            runLocaleTasks(tasks);
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+
+        if (manifestSink != null) {
+            // Locales left out of this run, by the filters or by convert(Set), keep their hashes for the next one
+            for (String localeCode : previousHashes.stringPropertyNames()) {
+                if (!translations.hasLocale(localeCode)) hashes.putIfAbsent(localeCode, previousHashes.getProperty(localeCode));
             }
+            writeManifest(hashes, manifestSink);
+        }
 
-            try {
-                Document document = createDocumentFromTranslation(translation.getValue());
-                saveDocToFile(document, newStringXmlFile);
-            } catch (IOException | TransformerException | ParserConfigurationException e) {
-                e.printStackTrace();
+        try {
+            sink.finish();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (!result.unchangedLocales.isEmpty()) {
+            print("Unchanged locales not rewritten: " + new TreeSet<>(result.unchangedLocales));
+        }
+    }
+
+    /**
+     * @return false if the file couldn't be written
+     */
+    protected boolean saveTranslation(TranslationTable translations, String localeCode, OutputSink sink, ConversionResult result) {
+        try {
+            byte[] bytes = buildTranslation(translations, localeCode);
+            boolean isWritten = sink.write(localeCode, getStringsXmlPath(localeCode), bytes);
+            (isWritten ? result.writtenLocales : result.unchangedLocales).add(localeCode);
+
+            if (isWritten) {
+                StageTimer.localeWritten(localeCode, bytes.length);
+            } else {
+                StageTimer.localeSkipped(localeCode);
             }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            result.failedLocales.add(localeCode);
+            return false;
         }
     }
 
-    protected void fixTranslations(HashMap<String, LinkedHashMap<String, String>> translations) {
-        for (Map.Entry<String, LinkedHashMap<String, String>> translation : translations.entrySet()) {
-            String localeCode = translation.getKey();
-            LinkedHashMap<String, String> strings = translation.getValue();
+    // Path of the locale's strings.xml in a res directory, e.g. "values-de/strings.xml"
+    protected String getStringsXmlPath(String localeCode) {
+        return STRING_VALUES_DIR_PREFIX
+                + (localeCode.equals(defaultLocaleCode) ? "" : "-" + localeCode)
+                + "/" + STRINGS_XML;
+    }
+
+    /**
+     * Hash of everything that ends up in a locale's strings.xml: the strings themselves plus the encoding
+     * and DocType written in its header.
+     */
+    protected String hashTranslation(TranslationTable translations, String localeCode) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
 
-            if (!localeCode.equals(defaultLocaleCode)) {
-                strings.remove("app_name");
+        updateDigest(digest, MANIFEST_VERSION);
+        updateDigest(digest, encoding);
+        updateDigest(digest, docType.docTypeText);
+        Utf8Column utf8Column = translations.getUtf8Column(localeCode);
+        String[] column = translations.getColumn(localeCode);
+        for (int row : translations.getRowOrder(localeCode)) {
+            updateDigest(digest, translations.getStringId(row));
+            if (utf8Column != null) {
+                utf8Column.updateDigest(row, digest);
+                continue;
             }
 
-            for (Map.Entry<String, String> string : strings.entrySet()) {
-                String stringKey = string.getKey();
-                String stringText = string.getValue();
+            updateDigest(digest, column[row]);
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    protected static void updateDigest(MessageDigest digest, String text) {
+        // Length prefixed so adjacent values can't run into each other
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    protected File getManifestFile(DirectoryOutputSink sink) {
+        return new File(sink.getDir() + MANIFEST_SUFFIX);
+    }
+
+    protected Properties readManifest(DirectoryOutputSink sink) {
+        Properties manifest = new Properties();
+        File manifestFile = getManifestFile(sink);
+        if (!manifestFile.exists()) return manifest;
+
+        try {
+            InputStream inputStream = new FileInputStream(manifestFile);
+            manifest.load(inputStream);
+            inputStream.close();
+        } catch (IOException e) {
+            // Treated as a first run, so every locale is written
+            e.printStackTrace();
+            manifest.clear();
+        }
+        return manifest;
+    }
+
+    protected void writeManifest(Map<String, String> hashes, DirectoryOutputSink sink) {
+        Properties manifest = new Properties();
+        manifest.putAll(hashes);
 
-                stringText = escapeString(stringText);
-                stringText = replaceDocType(localeCode, stringText);
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            manifest.store(buffer, "CsvToStringsXml content hashes per locale");
+            sink.fileWriter.write(getManifestFile(sink).toPath(), buffer.toByteArray());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-                stringText = stringText.trim();
+    protected void fixTranslations(TranslationTable translations, ConversionResult result) {
+        String[] defaultTexts = getDefaultTexts(translations);
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (String localeCode : translations.getLocaleCodes()) {
+            tasks.add(() -> {
+                fixTranslation(translations, localeCode, defaultTexts, result);
+                // Only tables built as Strings, e.g. by a subclass, are still on the heap here
+                if (isOffHeap()) translations.moveOffHeap(localeCode);
+                return null;
+            });
+        }
 
-                strings.put(stringKey, stringText);
+        try {
+            runLocaleTasks(tasks);
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    // Whether translations are kept off the heap, see CsvToStringsXmlBuilder.setOffHeapTranslations
+    protected boolean isOffHeap() {
+        return offHeapTranslations && Charset.forName(encoding).equals(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The default locale's strings as read, taken before any locale is fixed, for validation rules to
+     * compare translations with. Null if there are no rules.
+     */
+    protected String[] getDefaultTexts(TranslationTable translations) {
+        if (validationRules.isEmpty()) return null;
+
+        if (!translations.hasLocale(defaultLocaleCode)) return new String[0];
+
+        String[] defaultTexts = new String[translations.getRowCount()];
+        for (int row = 0; row < defaultTexts.length; row++) {
+            defaultTexts[row] = translations.get(defaultLocaleCode, row);
+        }
+        return defaultTexts;
+    }
+
+    /**
+     * @param defaultTexts from {@link #getDefaultTexts(TranslationTable)}, strings are validated as they
+     *                     are fixed if not null
+     */
+    protected void fixTranslation(TranslationTable translations, String localeCode, String[] defaultTexts, ConversionResult result) {
+        boolean isDefaultLocale = localeCode.equals(defaultLocaleCode);
+        // app_name is only kept in the default locale
+        int appNameRow = isDefaultLocale ? -1 : translations.getRow("app_name");
+
+        translations.transform(localeCode, (row, text) -> {
+            String defaultText = defaultTexts == null || isDefaultLocale || row >= defaultTexts.length ? null : defaultTexts[row];
+
+            if (text == null || row == appNameRow) {
+                // app_name isn't missing from the other locales
+                if (defaultText != null && row != appNameRow) {
+                    validateString(translations.getStringId(row), localeCode, null, null, defaultText, result);
+                }
+                return null;
             }
+
+            String stringText = escapeString(text);
+            stringText = replaceDocType(localeCode, stringText, result);
+
+            stringText = stringText.trim();
+
+            if (defaultTexts != null) validateString(translations.getStringId(row), localeCode, text, stringText, defaultText, result);
+            return stringText;
+        });
+    }
+
+    protected void validateString(String stringId, String localeCode, String text, String fixedText, String defaultText, ConversionResult result) {
+        for (ValidationRule rule : validationRules) {
+            ValidationIssue issue = rule.validate(localeCode, stringId, text, fixedText, defaultText);
+            if (issue != null) result.addValidationIssue(issue);
         }
     }
 
+    protected void printValidationIssues(ConversionResult result) {
+        List<ValidationIssue> issues = result.getValidationIssues();
+        if (issues.isEmpty()) return;
+
+        print("\n==========================");
+        print("Validation issues (Format: SEVERITY locale/string_id: problem):");
+        for (ValidationIssue issue : issues) {
+            print(issue);
+        }
+        print("==========================\n");
+    }
+
+    /**
+     * Runs one task per locale, on {@link #executorService} if one was set, otherwise in order on the
+     * calling thread. Results are returned in task order. The first failure cancels the remaining tasks.
+     */
+    protected <T> List<T> runLocaleTasks(List<Callable<T>> tasks) throws ExecutionException {
+        return runTasks(tasks, executorService);
+    }
+
+    // Runs the tasks on the executor, or in order on the calling thread if it is null
+    protected <T> List<T> runTasks(List<Callable<T>> tasks, ExecutorService executor) throws ExecutionException {
+        List<T> results = new ArrayList<>(tasks.size());
+
+        if (executor == null) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception e) {
+                    throw new ExecutionException(e);
+                }
+            }
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            // Counted toward the conversion the tasks belong to
+            futures.add(executor.submit(StageTimer.wrap(task)));
+        }
+
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecutionException(e);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        return results;
+    }
+
     protected String escapeString(String stringText) {
-        // Replace ellipsis (u2026 is …)
-        return stringText.replace("...", "&#8230;")
-                .replace("\u2026", "&#8230;")
+        int length = stringText.length();
+
+        // Strings with nothing to escape are returned as they are
+        int firstEscape = 0;
+        while (firstEscape < length && !isEscapeCandidate(stringText, firstEscape)) {
+            firstEscape++;
+        }
+        if (firstEscape == length) return stringText;
+
+        StringBuilder stringBuilder = ESCAPE_BUILDER.get();
+        stringBuilder.setLength(0);
+        stringBuilder.append(stringText, 0, firstEscape);
+
+        for (int i = firstEscape; i < length; i++) {
+            char c = stringText.charAt(i);
+
+            switch (c) {
+                // Replace ellipsis (u2026 is …)
+                case '.':
+                    if (i + 2 < length && stringText.charAt(i + 1) == '.' && stringText.charAt(i + 2) == '.') {
+                        stringBuilder.append("&#8230;");
+                        i += 2;
+                    } else {
+                        stringBuilder.append(c);
+                    }
+                    break;
+                case '\u2026':
+                    stringBuilder.append("&#8230;");
+                    break;
+
+                // Add a \ before single/double quotes if there isn't one already
+                case '\\':
+                    char next = i + 1 < length ? stringText.charAt(i + 1) : 0;
+                    if (next != '"' && next != '\'') stringBuilder.append(c);
+                    break;
+                case '"':
+                case '\'':
+                    stringBuilder.append('\\').append(c);
+                    break;
+
+                case ' ':
+                    if (i + 2 < length && stringText.charAt(i + 1) == '&' && stringText.charAt(i + 2) == ' ') {
+                        stringBuilder.append(" &amp; ");
+                        i += 2;
+                    } else {
+                        stringBuilder.append(c);
+                    }
+                    break;
+
+                default:
+                    stringBuilder.append(c);
+            }
+        }
+
+        return stringBuilder.toString();
+    }
 
-                // Add a \ before and single/double quotes if there isn't one already
-                .replace("\\\"", "\"")
-                .replace("\"", "\\\"")
-                .replace("\\'", "'")
-                .replace("'", "\\'")
+    protected static boolean isEscapeCandidate(String stringText, int index) {
+        char c = stringText.charAt(index);
+        return c == '.' || c == '\u2026' || c == '\\' || c == '"' || c == '\''
+                || (c == ' ' && index + 1 < stringText.length() && stringText.charAt(index + 1) == '&');
+    }
 
-                .replace(" & ", " &amp; ")
-                ;
+    protected String replaceDocType(String localeCode, String stringText, ConversionResult result) {
+        return docTypeReplacer.replace(stringText, (entityIndex, occurrences) ->
+                result.addDocTypeOccurrences(docTypeReplacer.getKey(entityIndex), localeCode, occurrences)
+        );
     }
 
-    protected String replaceDocType(String localeCode, String stringText) {
-        for (Map.Entry<String, DocType.Item> docTypeEntry : docType.entities.entrySet()) {
-            String docTypeKey = docTypeEntry.getKey();
-            DocType.Item docTypeItem = docTypeEntry.getValue();
+    // The whole file is built in memory, so a sink can compare it with the old one and replace it in one step
+    protected byte[] buildTranslation(TranslationTable translations, String localeCode) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(OUTPUT_BUFFER_SIZE);
+
+        Utf8Column utf8Column = translations.getUtf8Column(localeCode);
+        if (utf8Column != null) {
+            writeTranslation(translations, localeCode, utf8Column, buffer);
+            return buffer.toByteArray();
+        }
+
+        Writer writer = new OutputStreamWriter(buffer, encoding);
+        writeTranslation(translations, localeCode, writer);
+        writer.close();
 
-            if (!stringText.contains(docTypeItem.value)) continue;
-            String fullDoctTypeText = String.format(DOC_TYPE_TEMPLATE, docTypeEntry.getKey());
-            stringText = stringText.replace(docTypeItem.value, fullDoctTypeText);
+        return buffer.toByteArray();
+    }
 
-            int occurrences = StringUtils.countMatches(stringText, fullDoctTypeText);
-            Integer currentOccurrences = docTypeItem.actualOccurrencesPerLocale.get(localeCode);
-            if (currentOccurrences == null) currentOccurrences = 0;
-            docTypeItem.actualOccurrencesPerLocale.put(localeCode, currentOccurrences + occurrences);
+    protected void writeTranslation(TranslationTable translations, String localeCode, Writer writer) throws IOException {
+        StringsXmlWriter xmlWriter = new StringsXmlWriter(writer, Charset.forName(encoding));
+        xmlWriter.writeStartDocument(encoding, docType.docTypeText);
+
+        // A locale moved off the heap is decoded again, as a Writer needs chars
+        Utf8Column utf8Column = translations.getUtf8Column(localeCode);
+        String[] column = translations.getColumn(localeCode);
+        for (int row : translations.getRowOrder(localeCode)) {
+            String text = utf8Column != null ? utf8Column.getString(row) : column[row];
+            String stringId = translations.getStringId(row);
+            xmlWriter.writeString(stringId, text, !stringId.contains("app_name"));
         }
 
-        return stringText;
+        xmlWriter.writeEndDocument();
     }
 
+    // Copies a locale moved off the heap straight to the stream, without building a String per string
+    protected void writeTranslation(TranslationTable translations, String localeCode, Utf8Column utf8Column, OutputStream out) throws IOException {
+        Utf8StringsXmlWriter xmlWriter = new Utf8StringsXmlWriter(out);
+        xmlWriter.writeStartDocument(encoding, docType.docTypeText);
+
+        for (int row : translations.getRowOrder(localeCode)) {
+            String stringId = translations.getStringId(row);
+            xmlWriter.writeString(stringId, utf8Column, row, !stringId.contains("app_name"));
+        }
+
+        xmlWriter.writeEndDocument();
+    }
+
+    /**
+     * @deprecated strings.xml files are written by {@link StringsXmlWriter} without a DOM. Kept for
+     * subclasses that call it, the converter no longer does
+     */
+    @Deprecated
     protected Document createDocumentFromTranslation(LinkedHashMap<String, String> translation) throws ParserConfigurationException {
         Document document = createNewXmlFile();
         Element root = document.createElement(STRINGS_XML_ROOT_NODE);
@@ -276,141 +1112,250 @@ public class CsvToStringsXml {
 
         document.appendChild(root);
 
-//        Node enableEscaping = document.createProcessingInstruction(StreamResult.PI_ENABLE_OUTPUT_ESCAPING, "&");
-//        root.appendChild(enableEscaping);
-
         return document;
     }
 
+    /**
+     * @deprecated see {@link #createDocumentFromTranslation(LinkedHashMap)}
+     */
+    @Deprecated
     protected Document createNewXmlFile() throws ParserConfigurationException {
         DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
         DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
         return docBuilder.newDocument();
     }
 
+    /**
+     * @deprecated see {@link #createDocumentFromTranslation(LinkedHashMap)}. Writes the file in
+     * place, without the atomic replace or fsync policy of the output sinks
+     */
+    @Deprecated
     protected void saveDocToFile(Document doc, File file) throws IOException, TransformerException {
         doc.setXmlStandalone(true);
 
         DOMSource source = new DOMSource(doc);
         FileOutputStream out = new FileOutputStream(file);
-        StreamResult result = new StreamResult(out);
-
-        Transformer transformer = TransformerFactory.newInstance().newTransformer();
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        // transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
-        transformer.setOutputProperty(OutputKeys.ENCODING, encoding);
-        transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-        out.write(("<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>\n").getBytes(encoding));
-        out.write(docType.docTypeText.getBytes(encoding));
-        transformer.transform(source, result);
-
-        out.close();
+        try {
+            StreamResult result = new StreamResult(out);
+
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            transformer.setOutputProperty(OutputKeys.ENCODING, encoding);
+            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            out.write(("<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>\n").getBytes(encoding));
+            out.write(docType.docTypeText.getBytes(encoding));
+            transformer.transform(source, result);
+        } finally {
+            out.close();
+        }
     }
 
     protected void addExistingStringXmlTranslationsToNewTranslations(
             HashMap<String, LinkedHashMap<String, String>> existingTranslations,
-            HashMap<String, LinkedHashMap<String, String>> newTranslations
+            TranslationTable newTranslations
     ) {
-        for (Map.Entry<String, LinkedHashMap<String, String>> existingStringXml : existingTranslations.entrySet()) {
-            String localeCode = existingStringXml.getKey();
-            LinkedHashMap<String, String> existingTranslation = existingStringXml.getValue();
+        for (String localeCode : getMergeOrder(existingTranslations.keySet())) {
+            LinkedHashMap<String, String> existingTranslation = existingTranslations.get(localeCode);
 
-            LinkedHashMap<String, String> newTranslation = newTranslations.get(localeCode);
-            if (newTranslation == null || newTranslation.isEmpty()) {
-                print(new Exception("newTranslation == null").getStackTrace());
+            if (isMissingFromSheet(newTranslations, localeCode)) {
+                printNotMerged(localeCode);
                 continue;
             }
 
-            addAllIfAbsent(existingTranslation, newTranslation);
+            addAllIfAbsent(existingTranslation, newTranslations, localeCode);
         }
     }
 
-    protected void removeEmptyTranslations(HashMap<String, LinkedHashMap<String, String>> translations) {
-        for (Map.Entry<String, LinkedHashMap<String, String>> stringXml : translations.entrySet()) {
-            LinkedHashMap<String, String> translation = stringXml.getValue();
-            translation.values().removeIf(Objects::isNull);
-            translation.values().removeIf(String::isEmpty);
+    // Strings only found in existing files get new rows in the order they are first met, so the
+    // default locale goes first and the rest follow in a fixed order
+    protected List<String> getMergeOrder(Set<String> localeCodes) {
+        List<String> mergeOrder = new ArrayList<>(localeCodes);
+        Collections.sort(mergeOrder);
+        if (mergeOrder.remove(defaultLocaleCode)) mergeOrder.add(0, defaultLocaleCode);
+        return mergeOrder;
+    }
+
+    protected void printNotMerged(String localeCode) {
+        print("Locale " + localeCode + " has no strings in the spreadsheet, its existing strings were not merged");
+    }
+
+    // Locales without strings in the sheet don't get existing strings merged in
+    protected boolean isMissingFromSheet(TranslationTable newTranslations, String localeCode) {
+        // A string id filter can leave a locale with no strings from the sheet, which still gets the existing ones
+        return stringIdFilter != null
+                ? !newTranslations.hasLocale(localeCode)
+                : newTranslations.count(localeCode) == 0;
+    }
+
+    /**
+     * First pass of the streaming merge: adds a row for each string id only found in the existing
+     * files, in the same order as merging the fully read files would, without reading any text.
+     *
+     * @return strings.xml files of each locale to merge, in res directory order
+     */
+    protected LinkedHashMap<String, List<Path>> addExistingStringIds(List<Path> resDirs, TranslationTable newTranslations) throws IOException, XMLStreamException {
+        LinkedHashMap<String, List<Path>> files = listStringsXmlFiles(resDirs, newTranslations.getLocaleCodes());
+        LinkedHashMap<String, List<Path>> mergedFiles = new LinkedHashMap<>();
+
+        for (String localeCode : getMergeOrder(files.keySet())) {
+            if (isMissingFromSheet(newTranslations, localeCode)) {
+                printNotMerged(localeCode);
+                continue;
+            }
+
+            for (Path file : files.get(localeCode)) {
+                readXmlFileIds(file, newTranslations::addStringId);
+            }
+            mergedFiles.put(localeCode, files.get(localeCode));
+        }
+
+        return mergedFiles;
+    }
+
+    /**
+     * Second pass of the streaming merge: fills the locale's missing strings from its existing files
+     * as they are read. Strings from the sheet are kept, and of files in several res directories the
+     * first one wins.
+     */
+    protected void mergeExistingStrings(TranslationTable newTranslations, String localeCode, List<Path> files) throws IOException, XMLStreamException {
+        for (Path file : files) {
+            // Within a file the last of a repeated id wins, as when the file is read into a map
+            BitSet rowsFromFile = new BitSet();
+
+            readXmlFile(file, (stringId, text) -> {
+                int row = newTranslations.getRow(stringId);
+                // The file changed since its ids were read
+                if (row < 0) return;
+
+                if (newTranslations.hasText(localeCode, row) && !rowsFromFile.get(row)) return;
+                newTranslations.set(localeCode, row, text);
+                rowsFromFile.set(row);
+                newTranslations.markMerged(localeCode, row);
+            });
         }
     }
 
+    protected long countStrings(HashMap<String, LinkedHashMap<String, String>> translations) {
+        long count = 0;
+        for (LinkedHashMap<String, String> translation : translations.values()) {
+            count += translation.size();
+        }
+        return count;
+    }
+
+    protected void removeEmptyTranslations(TranslationTable translations) {
+        translations.removeEmpty();
+    }
+
     protected void addAllIfAbsent(LinkedHashMap<String, String> toBeAdded, LinkedHashMap<String, String> target) {
         LinkedHashMap<String, String> tmp = new LinkedHashMap<>(toBeAdded);
         tmp.keySet().removeAll(target.keySet());
         target.putAll(tmp);
     }
 
+    protected void addAllIfAbsent(LinkedHashMap<String, String> toBeAdded, TranslationTable target, String localeCode) {
+        target.putAllIfAbsent(localeCode, toBeAdded);
+    }
 
 
-    protected HashMap<String, LinkedHashMap<String, String>> convertStringXmlsToHashMap(HashMap<String, Document> stringXmls) {
-        HashMap<String, LinkedHashMap<String, String>> hashMap = new HashMap<>();
-
-        for (Map.Entry<String, Document> stringXml : stringXmls.entrySet()) {
-            LinkedHashMap<String, String> translations = new LinkedHashMap<>();
 
-            try {
-                Document doc = stringXml.getValue();
-                NodeList nodeList = doc.getElementsByTagName(STRINGS_XML_NODE_STRING);
-                for (int i = 0; i < nodeList.getLength(); i++) {
-                    Node node = nodeList.item(i);
+    protected boolean isLocaleWanted(String localeCode) {
+        if (includedLocaleCodes != null && !includedLocaleCodes.contains(localeCode)) return false;
+        return excludedLocaleCodes == null || !excludedLocaleCodes.contains(localeCode);
+    }
 
-                    if (node.getNodeType() != Node.ELEMENT_NODE) continue;
+    protected boolean isStringIdWanted(String stringId) {
+        return stringIdFilter == null || stringIdFilter.test(stringId);
+    }
 
-                    Element element = (Element) node;
-                    String stringId = element.getAttribute(STRINGS_XML_ATTRIBUTE_NAME);
+    protected TranslationTable convertCsvListToTable(List<String[]> csv) {
+        return convertCsvRowsToTable(csv.iterator());
+    }
 
-                    translations.put(stringId, element.getTextContent());
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    /**
+     * @deprecated translations are kept in a {@link TranslationTable}, use
+     * {@link #convertCsvListToTable(List)}. Kept for subclasses that call it, as a map per locale
+     * built from the table
+     */
+    @Deprecated
+    protected HashMap<String, LinkedHashMap<String, String>> convertCsvListToHashMap(List<String[]> csv) {
+        TranslationTable table = convertCsvListToTable(csv);
 
-            hashMap.put(stringXml.getKey(), translations);
+        HashMap<String, LinkedHashMap<String, String>> hashMap = new HashMap<>();
+        for (String localeCode : table.getLocaleCodes()) {
+            hashMap.put(localeCode, table.toMap(localeCode));
         }
-
         return hashMap;
     }
 
+    // Off the heap from the start when translations are kept off the heap, see isOffHeap()
+    protected TranslationTable createTranslationTable() {
+        return new TranslationTable(isOffHeap());
+    }
 
-    protected HashMap<String, LinkedHashMap<String, String>> convertCsvListToHashMap(List<String[]> csv) {
-        HashMap<String, LinkedHashMap<String, String>> hashMap = new HashMap<>();
-
-        List<String> stringIds = getFirstColumnOfCsv(csv);
+    protected TranslationTable convertCsvRowsToTable(Iterator<String[]> rows) {
+        TranslationTable table = createTranslationTable();
+        if (!rows.hasNext()) return table;
+
+        // Row CSV_LOCALE_CODE_ROW holds the locale codes, terminated by the first empty cell
+        List<String> localeCodes = new ArrayList<>();
+        for (String cell : rows.next()) {
+            if (cell.isEmpty()) break;
+
+            // The string id column and locales that weren't asked for map to null
+            if (cell.equals(stringIdColumnTitle) || !isLocaleWanted(cell)) {
+                localeCodes.add(null);
+            } else {
+                table.addLocale(cell);
+                localeCodes.add(cell);
+            }
+        }
 
-        HashMap<Integer, String> localePositions = new HashMap<>();
+        // Columns are resolved once per growth of the table, so each cell is a direct array write
+        String[][] columns = new String[localeCodes.size()][];
+        int columnCapacity = 0;
 
-        int terminatingLocaleColNum = 999;
-        int rowNum = 0;
+        // Off the heap each cell is encoded as it is read, so the sheet is never held as Strings
+        Utf8Column[] utf8Columns = new Utf8Column[localeCodes.size()];
+        for (int colNum = 0; colNum < utf8Columns.length; colNum++) {
+            String localeCode = localeCodes.get(colNum);
+            if (localeCode != null) utf8Columns[colNum] = table.getUtf8Column(localeCode);
+        }
 
-        for (String[] row : csv) {
-            int colNum = 0;
+        while (rows.hasNext()) {
+            String[] row = rows.next();
+            if (!isStringIdWanted(row[CSV_STRING_ID_COL])) continue;
 
-            for (String cell : row) {
-                if (colNum >= terminatingLocaleColNum) continue;
+            int tableRow = table.addStringId(row[CSV_STRING_ID_COL]);
 
-                if (rowNum == 0) {
-                    if (cell.isEmpty()) {
-                        terminatingLocaleColNum = colNum;
-                        break;
-                    }
+            if (tableRow >= columnCapacity) {
+                for (int colNum = 0; colNum < columns.length; colNum++) {
+                    String localeCode = localeCodes.get(colNum);
+                    columns[colNum] = localeCode == null ? null : table.getColumn(localeCode);
+                }
+                columnCapacity = table.getCapacity();
+            }
 
-                    hashMap.put(cell, new LinkedHashMap<>());
-                    localePositions.put(colNum, cell);
-                } else {
-                    String localeCode = localePositions.get(colNum);
-                    LinkedHashMap<String, String> localeStrings = hashMap.get(localeCode);
-                    localeStrings.put(stringIds.get(rowNum - 1), cell);
+            int colCount = Math.min(row.length, columns.length);
+            for (int colNum = 0; colNum < colCount; colNum++) {
+                String[] column = columns[colNum];
+                if (column != null) {
+                    column[tableRow] = row[colNum];
+                } else if (utf8Columns[colNum] != null) {
+                    utf8Columns[colNum].set(tableRow, row[colNum]);
                 }
-                colNum++;
             }
-            rowNum++;
         }
 
-        hashMap.remove(stringIdColumnTitle);
-
-        return hashMap;
+        return table;
     }
 
+    /**
+     * @deprecated string ids are read along with their row by {@link #convertCsvRowsToTable(Iterator)}.
+     * Kept for subclasses that call it
+     */
+    @Deprecated
     protected List<String> getFirstColumnOfCsv(List<String[]> csv) {
         List<String> firstCol = new ArrayList<>();
 
@@ -429,86 +1374,355 @@ public class CsvToStringsXml {
     }
 
     protected List<String[]> readCsv(Reader reader) throws IOException {
+        return createCsvReader(reader).readAll();
+    }
+
+    protected TranslationTable readCsvToTable(Reader reader) throws IOException {
+        try {
+            // Rows are pulled one at a time so the raw sheet is never held in memory
+            return convertCsvRowsToTable(createCsvReader(reader).iterator());
+        } catch (RuntimeException e) {
+            // CSVIterator wraps read failures
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw e;
+        }
+    }
+
+    protected TranslationTable readMappedTsvToTable(Path path) throws IOException {
+        MappedTsvReader tsvReader = new MappedTsvReader(path, Charset.forName(encoding));
+        try {
+            // Columns past the last locale code are never decoded
+            tsvReader.setLimitColumnsToHeader(true);
+            tsvReader.setColumnFilter(localeCode -> !localeCode.equals(stringIdColumnTitle) && isLocaleWanted(localeCode));
+            if (stringIdFilter != null) tsvReader.setRowFilter(stringIdFilter);
+            if (parallelSpreadsheet) return convertCsvRowsToTable(readTsvInParallel(tsvReader).iterator());
+            return convertCsvRowsToTable(tsvReader.iterator());
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw e;
+        } finally {
+            tsvReader.close();
+        }
+    }
+
+    protected long getMinSpreadsheetChunkSize() {
+        return MIN_SPREADSHEET_CHUNK_SIZE;
+    }
+
+    /**
+     * Reads the rows after the header in chunks of whole rows, on {@link #executorService} if one was
+     * set, otherwise on the common ForkJoinPool. Rows are returned in file order, header first.
+     */
+    protected List<String[]> readTsvInParallel(MappedTsvReader tsvReader) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+
+        // The header decides which columns the chunks decode
+        String[] header = tsvReader.readNext();
+        if (header == null) return rows;
+        rows.add(header);
+
+        ExecutorService executor = executorService != null ? executorService : ForkJoinPool.commonPool();
+        int threads = executor instanceof ForkJoinPool
+                ? ((ForkJoinPool) executor).getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+
+        long remaining = tsvReader.length - tsvReader.getPosition();
+        long chunkSize = Math.max(getMinSpreadsheetChunkSize(), remaining / ((long) threads * SPREADSHEET_CHUNKS_PER_THREAD));
+        long[] chunkStarts = tsvReader.findChunkStarts(chunkSize);
+
+        List<Callable<List<String[]>>> tasks = new ArrayList<>();
+        for (int i = 0; i < chunkStarts.length - 1; i++) {
+            MappedTsvReader chunkReader = tsvReader.slice(chunkStarts[i], chunkStarts[i + 1]);
+            tasks.add(chunkReader::readAll);
+        }
+
+        List<List<String[]>> chunks;
+        try {
+            chunks = runTasks(tasks, tasks.size() > 1 ? executor : null);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+
+        for (List<String[]> chunk : chunks) {
+            rows.addAll(chunk);
+        }
+        return rows;
+    }
+
+    protected CSVReader createCsvReader(Reader reader) {
         RFC4180Parser rfc4180Parser = new RFC4180ParserBuilder().withSeparator('\t').build();
 //        CSVParser csvParser = new CSVParserBuilder().withSeparator('\t').build();
 
-        CSVReader csvReader = new CSVReaderBuilder(reader)
+        return new CSVReaderBuilder(reader)
                 .withCSVParser(rfc4180Parser)
                 .build();
+    }
 
-        return csvReader.readAll();
+    protected HashMap<String, LinkedHashMap<String, String>> readResStringFiles(File parentDir) throws IOException, XMLStreamException {
+        return readResStringFiles(Collections.singletonList(parentDir.toPath()), null);
     }
 
-    protected HashMap<String, Document> readResStringFiles(File parentDir) throws IOException, ParserConfigurationException, SAXException {
-        HashMap<String, Document> documents = new HashMap<>();
-        File[] resDirs = parentDir.listFiles();
+    /**
+     * Reads the strings.xml of every values* directory in each res directory, parsing the files on
+     * {@link #executorService} if one was set. Res directories are merged in the order given: when a
+     * string is in more than one, the text from the first one is kept.
+     *
+     * @param localeCodes locales to read, or null to read all
+     */
+    protected HashMap<String, LinkedHashMap<String, String>> readResStringFiles(List<Path> resDirs, Set<String> localeCodes) throws IOException, XMLStreamException {
+        List<String> fileLocaleCodes = new ArrayList<>();
+        List<Callable<LinkedHashMap<String, String>>> tasks = new ArrayList<>();
+
+        for (Map.Entry<String, List<Path>> localeFiles : listStringsXmlFiles(resDirs, localeCodes).entrySet()) {
+            for (Path stringsXml : localeFiles.getValue()) {
+                fileLocaleCodes.add(localeFiles.getKey());
+                tasks.add(() -> readExistingXmlFile(stringsXml));
+            }
+        }
 
-        for (File resDir : resDirs) {
-            if (!resDir.getName().startsWith(STRING_VALUES_DIR_PREFIX)) continue;
+        List<LinkedHashMap<String, String>> stringXmls;
+        try {
+            stringXmls = runLocaleTasks(tasks);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof XMLStreamException) throw (XMLStreamException) cause;
+            throw new IOException(cause);
+        }
 
-            File[] localeResFiles = resDir.listFiles();
+        HashMap<String, LinkedHashMap<String, String>> hashMap = new HashMap<>();
+        for (int i = 0; i < stringXmls.size(); i++) {
+            String localeCode = fileLocaleCodes.get(i);
+            LinkedHashMap<String, String> translation = hashMap.get(localeCode);
+
+            if (translation == null) {
+                hashMap.put(localeCode, stringXmls.get(i));
+            } else {
+                addAllIfAbsent(stringXmls.get(i), translation);
+            }
+        }
 
-            for (File localeResFile : localeResFiles) {
-                if (!localeResFile.getName().equals(STRINGS_XML)) continue;
+        return hashMap;
+    }
 
-                String valuesDirName = resDir.getName();
-                String localeCode;
-                if (valuesDirName.equals(STRING_VALUES_DIR_PREFIX)) {
-                    localeCode = defaultLocaleCode;
-                } else {
-                    localeCode = valuesDirName.replace(STRING_VALUES_DIR_PREFIX + "-", "");
-                }
+    /**
+     * @param localeCodes locales to list, or null to list all
+     * @return the strings.xml files of each locale, in res directory order
+     */
+    protected LinkedHashMap<String, List<Path>> listStringsXmlFiles(List<Path> resDirs, Set<String> localeCodes) throws IOException {
+        LinkedHashMap<String, List<Path>> files = new LinkedHashMap<>();
+
+        for (Path resDir : resDirs) {
+            for (Path valuesDir : listValuesDirs(resDir)) {
+                Path stringsXml = valuesDir.resolve(STRINGS_XML);
+                if (!Files.isRegularFile(stringsXml)) continue;
 
-                Document doc = readXmlFile(localeResFile);
-                removeNonTranslatableStrings(doc);
+                String localeCode = getLocaleCode(valuesDir.getFileName().toString());
+                if (localeCodes != null && !localeCodes.contains(localeCode)) continue;
 
-                documents.put(localeCode, doc);
-                break;
+                files.computeIfAbsent(localeCode, k -> new ArrayList<>()).add(stringsXml);
+            }
+        }
+
+        return files;
+    }
+
+    // values* directories of a res directory, sorted by name so the result doesn't depend on the file system
+    protected List<Path> listValuesDirs(Path resDir) throws IOException {
+        List<Path> valuesDirs = new ArrayList<>();
+
+        DirectoryStream<Path> directoryStream = Files.newDirectoryStream(resDir, STRING_VALUES_DIR_PREFIX + "*");
+        try {
+            for (Path path : directoryStream) {
+                if (Files.isDirectory(path)) valuesDirs.add(path);
             }
+        } finally {
+            directoryStream.close();
         }
 
-        return documents;
+        Collections.sort(valuesDirs);
+        return valuesDirs;
     }
 
+    protected String getLocaleCode(String valuesDirName) {
+        if (valuesDirName.equals(STRING_VALUES_DIR_PREFIX)) return defaultLocaleCode;
+        return valuesDirName.replace(STRING_VALUES_DIR_PREFIX + "-", "");
+    }
+
+    protected LinkedHashMap<String, String> readExistingXmlFile(Path path) throws IOException, XMLStreamException {
+        if (!cacheInputs) return readCachedXmlFile(path);
+
+        path = path.toAbsolutePath().normalize();
+        CachedInput<LinkedHashMap<String, String>> cached = existingResourceCache.get(path);
+
+        if (cached == null || !cached.isCurrent(path)) {
+            cached = new CachedInput<>(path);
+            cached.value = readCachedXmlFile(path);
+            existingResourceCache.put(path, cached);
+        }
+
+        // Merging adds to the maps it is given, so the cached one is never handed out
+        return new LinkedHashMap<>(cached.value);
+    }
+
+    // Translatable strings of a strings.xml file, from the resource cache if one is set
+    protected LinkedHashMap<String, String> readCachedXmlFile(Path path) throws IOException, XMLStreamException {
+        if (resourceCache == null) return readStringsXmlFile(path.toFile());
+
+        LinkedHashMap<String, String> strings = resourceCache.get(path);
+        if (stringIdFilter != null) strings.keySet().removeIf(stringId -> !stringIdFilter.test(stringId));
+        return strings;
+    }
+
+    // Translatable strings of a strings.xml file, in file order
+    protected LinkedHashMap<String, String> readStringsXmlFile(File file) throws IOException, XMLStreamException {
+        Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding));
+        try {
+            return new StringsXmlReader(reader, stringIdFilter).readStrings();
+        } finally {
+            reader.close();
+        }
+    }
+
+    // Passes the translatable strings of a strings.xml file to the consumer as they are read
+    protected void readXmlFile(Path path, BiConsumer<String, String> consumer) throws IOException, XMLStreamException {
+        // A cached file is already in memory, so there is nothing to gain from streaming it
+        if (resourceCache != null) {
+            readCachedXmlFile(path).forEach(consumer);
+            return;
+        }
+
+        Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path.toFile()), encoding));
+        try {
+            new StringsXmlReader(reader, stringIdFilter).readStrings(consumer);
+        } finally {
+            reader.close();
+        }
+    }
+
+    protected void readXmlFileIds(Path path, Consumer<String> consumer) throws IOException, XMLStreamException {
+        if (resourceCache != null) {
+            readCachedXmlFile(path).keySet().forEach(consumer);
+            return;
+        }
+
+        Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path.toFile()), encoding));
+        try {
+            new StringsXmlReader(reader, stringIdFilter).readStringIds(consumer);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @deprecated strings.xml files are read by {@link StringsXmlReader} without a DOM, see
+     * {@link #readStringsXmlFile(File)}. Kept for subclasses that call it, the converter no longer does
+     */
+    @Deprecated
+    protected Document readXmlFile(File file) throws IOException, ParserConfigurationException, SAXException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), encoding);
+        try {
+            InputSource is = new InputSource(reader);
+            is.setEncoding(encoding);
+
+            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
+            Document doc = dBuilder.parse(is);
+            doc.getDocumentElement().normalize();
+            return doc;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @deprecated see {@link #readXmlFile(File)}. StringsXmlReader drops these strings as it reads
+     */
+    @Deprecated
     protected void removeNonTranslatableStrings(Document doc) {
-        Element root = doc.getDocumentElement();
         NodeList nodeList = doc.getElementsByTagName(STRINGS_XML_NODE_STRING);
 
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            Node node = nodeList.item(i);
+        // Backwards, as the list is live and shrinks with each removal
+        for (int i = nodeList.getLength() - 1; i >= 0; i--) {
+            Element element = (Element) nodeList.item(i);
 
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                root.removeChild(node);
-                print("Removed non-element node with content: " + node.getTextContent());
-                continue;
+            if (!element.hasAttribute(STRINGS_XML_ATTRIBUTE_TRANSLATABLE)) continue;
+            if (element.getAttribute(STRINGS_XML_ATTRIBUTE_TRANSLATABLE).equals("false")) {
+                element.getParentNode().removeChild(element);
             }
+        }
+    }
 
-            Element element = (Element) node;
+    /**
+     * @deprecated see {@link #readXmlFile(File)}
+     */
+    @Deprecated
+    protected HashMap<String, LinkedHashMap<String, String>> convertStringXmlsToHashMap(HashMap<String, Document> stringXmls) {
+        HashMap<String, LinkedHashMap<String, String>> hashMap = new HashMap<>();
 
-            if (!element.hasAttribute(STRINGS_XML_ATTRIBUTE_TRANSLATABLE)) continue;
-            String attributeValue = element.getAttribute(STRINGS_XML_ATTRIBUTE_TRANSLATABLE);
-            if (attributeValue.equals("false")) {
-                root.removeChild(node);
-//                print("Removed non-translatable node with content: " + element.getTextContent());
+        for (Map.Entry<String, Document> stringXml : stringXmls.entrySet()) {
+            LinkedHashMap<String, String> translations = new LinkedHashMap<>();
+
+            NodeList nodeList = stringXml.getValue().getElementsByTagName(STRINGS_XML_NODE_STRING);
+            for (int i = 0; i < nodeList.getLength(); i++) {
+                Element element = (Element) nodeList.item(i);
+                translations.put(element.getAttribute(STRINGS_XML_ATTRIBUTE_NAME), element.getTextContent());
             }
+
+            hashMap.put(stringXml.getKey(), translations);
         }
+
+        return hashMap;
     }
 
-    protected Document readXmlFile(File file) throws IOException, ParserConfigurationException, SAXException {
-        InputStream inputStream= new FileInputStream(file);
-        Reader reader = new InputStreamReader(inputStream, encoding);
-        InputSource is = new InputSource(reader);
-        is.setEncoding(encoding);
+    /**
+     * Parsed contents of an input file, along with the size and modified time it was read at.
+     * Watch events can arrive before a write is finished, so these are checked again before use.
+     */
+    protected static class CachedInput<T> {
+        final long lastModified;
+        final long size;
+        T value;
+
+        CachedInput(Path path) throws IOException {
+            // Taken before reading, so a write during the read is picked up next time
+            lastModified = Files.getLastModifiedTime(path).toMillis();
+            size = Files.size(path);
+        }
+
+        boolean isCurrent(Path path) {
+            try {
+                return Files.getLastModifiedTime(path).toMillis() == lastModified && Files.size(path) == size;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
 
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        Document doc = dBuilder.parse(is);
-        doc.getDocumentElement().normalize();
+    // Reads the spreadsheet of a run
+    protected interface SpreadsheetSource {
+        TranslationTable read() throws IOException;
+    }
 
-        inputStream.close();
-        reader.close();
+    // Gets a locale ready to be written
+    protected interface LocalePreparer {
+        void prepare(String localeCode) throws IOException, XMLStreamException;
+    }
 
-        return doc;
+    // Reads the existing translations of a run, for the given locales only
+    protected interface ExistingTranslationsSource {
+        HashMap<String, LinkedHashMap<String, String>> read(Set<String> localeCodes) throws IOException, XMLStreamException;
+    }
+
+    // When written files are synced to disk
+    public enum FsyncPolicy {
+        // Left to the OS, which is fastest but a crash can lose recent files
+        NONE,
+        // Each file and its directory are synced as it is written
+        PER_FILE,
+        // Every file and directory written is synced once all are written
+        AT_END
     }
 
     public static class DocTypeBuilder {
@@ -555,7 +1769,6 @@ public class CsvToStringsXml {
         public static class Item {
             String value;
             int expectedOccurrences = NOT_SET;
-            HashMap<String, Integer> actualOccurrencesPerLocale = new HashMap<>();
 
             public Item(String value) {
                 this.value = value;
@@ -568,7 +1781,7 @@ public class CsvToStringsXml {
     }
 
     public static class CsvToStringsXmlBuilder {
-        String existingResourcesDirPath = null;
+        List<String> existingResourcesDirPaths = new ArrayList<>();
         String spreadsheetPath = null;
         String outputPath = null;
         char spreadsheetDelimiter = ',';
@@ -576,9 +1789,33 @@ public class CsvToStringsXml {
         DocType docType = null;
         String encoding = "UTF-8";
         String stringIdColumnTitle = "";
+        ExecutorService executorService = null;
+        boolean incremental = false;
+        ConversionListener conversionListener = null;
+        boolean memoryMappedSpreadsheet = false;
+        boolean parallelSpreadsheet = false;
+        Set<String> includedLocaleCodes = null;
+        Set<String> excludedLocaleCodes = null;
+        Predicate<String> stringIdFilter = null;
+        FsyncPolicy fsyncPolicy = FsyncPolicy.NONE;
+        boolean zipOutput = false;
+        int zipCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+        boolean streamingMerge = false;
+        boolean validation = false;
+        List<ValidationRule> validationRules = new ArrayList<>();
+        boolean failOnValidationErrors = false;
+        boolean offHeapTranslations = false;
+        String resourceCacheDirPath = null;
+        long resourceCacheMaxBytes = 64L * 1024 * 1024;
 
         public CsvToStringsXmlBuilder setExistingResourcesDirPath(String path) {
-            existingResourcesDirPath = path;
+            existingResourcesDirPaths.clear();
+            if (path != null) existingResourcesDirPaths.add(path);
+            return this;
+        }
+
+        public CsvToStringsXmlBuilder addExistingResourcesDirPath(String path) {
+            existingResourcesDirPaths.add(path);
             return this;
         }
 
@@ -616,6 +1853,119 @@ public class CsvToStringsXml {
             stringIdColumnTitle = title;
             return this;
         }
+
+        public CsvToStringsXmlBuilder setExecutorService(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        // Only rewrites locales whose output changed since the last run. Not with setZipOutput
+        public CsvToStringsXmlBuilder setIncremental(boolean incremental) {
+            this.incremental = incremental;
+            return this;
+        }
+
+        public CsvToStringsXmlBuilder setConversionListener(ConversionListener conversionListener) {
+            this.conversionListener = conversionListener;
+            return this;
+        }
+
+        public CsvToStringsXmlBuilder setMemoryMappedSpreadsheet(boolean memoryMappedSpreadsheet) {
+            this.memoryMappedSpreadsheet = memoryMappedSpreadsheet;
+            return this;
+        }
+
+        // Implies setMemoryMappedSpreadsheet(true)
+        public CsvToStringsXmlBuilder setParallelSpreadsheet(boolean parallelSpreadsheet) {
+            this.parallelSpreadsheet = parallelSpreadsheet;
+            return this;
+        }
+
+        public CsvToStringsXmlBuilder setIncludedLocaleCodes(String... localeCodes) {
+            includedLocaleCodes = localeCodes == null ? null : new HashSet<>(Arrays.asList(localeCodes));
+            return this;
+        }
+
+        public CsvToStringsXmlBuilder setExcludedLocaleCodes(String... localeCodes) {
+            excludedLocaleCodes = localeCodes == null ? null : new HashSet<>(Arrays.asList(localeCodes));
+            return this;
+        }
+
+        public CsvToStringsXmlBuilder setStringIdFilter(Predicate<String> filter) {
+            stringIdFilter = filter;
+            return this;
+        }
+
+        public CsvToStringsXmlBuilder setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+            this.fsyncPolicy = fsyncPolicy;
+            return this;
+        }
+
+        // Writes outputPath as one zip file of values-*/strings.xml entries instead of a directory
+        public CsvToStringsXmlBuilder setZipOutput(boolean zipOutput) {
+            this.zipOutput = zipOutput;
+            return this;
+        }
+
+        // 0-9 as in java.util.zip.Deflater, where 0 stores the files uncompressed
+        public CsvToStringsXmlBuilder setZipCompressionLevel(int level) {
+            zipCompressionLevel = level;
+            return this;
+        }
+
+        /**
+         * Merges existing strings.xml files while writing rather than reading them all up front:
+         * each locale's files are streamed into it just before it is written, and it is dropped once
+         * written. Output is the same, but the existing strings are never all held at once.
+         */
+        public CsvToStringsXmlBuilder setStreamingMerge(boolean streamingMerge) {
+            this.streamingMerge = streamingMerge;
+            return this;
+        }
+
+        // Checks every string with the rules of ValidationRules.defaults() while translations are fixed
+        public CsvToStringsXmlBuilder setValidation(boolean validation) {
+            this.validation = validation;
+            return this;
+        }
+
+        // Checks every string with the rule as well, whether or not setValidation is on
+        public CsvToStringsXmlBuilder addValidationRule(ValidationRule rule) {
+            validationRules.add(rule);
+            return this;
+        }
+
+        // Stops the run before anything is written if a validation rule found an error. Not with setStreamingMerge
+        public CsvToStringsXmlBuilder setFailOnValidationErrors(boolean failOnValidationErrors) {
+            this.failOnValidationErrors = failOnValidationErrors;
+            return this;
+        }
+
+        /**
+         * Keeps translations as UTF-8 bytes outside the heap from the moment they are read until they
+         * are written, and writes the bytes as they are, for sheets with so many locales the heap fills
+         * with Strings. Only one cell at a time is a String while it is read, merged or fixed. Only
+         * used when the encoding is UTF-8. Direct memory is limited by -XX:MaxDirectMemorySize.
+         */
+        public CsvToStringsXmlBuilder setOffHeapTranslations(boolean offHeapTranslations) {
+            this.offHeapTranslations = offHeapTranslations;
+            return this;
+        }
+
+        /**
+         * Keeps the parsed strings of existing strings.xml files in this directory between runs, so
+         * unchanged files aren't parsed again. See {@link ResourceCache}
+         */
+        public CsvToStringsXmlBuilder setResourceCacheDirPath(String path) {
+            resourceCacheDirPath = path;
+            return this;
+        }
+
+        // Size the resource cache directory is trimmed to after each run. Defaults to 64MB
+        public CsvToStringsXmlBuilder setResourceCacheMaxBytes(long maxBytes) {
+            resourceCacheMaxBytes = maxBytes;
+            return this;
+        }
     }
 
 }
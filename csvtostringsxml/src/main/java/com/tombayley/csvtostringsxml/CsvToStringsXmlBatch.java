@@ -0,0 +1,279 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the conversions of many projects in one JVM, so startup and JIT warm-up are paid once.
+ *
+ * Jobs run on one bounded ForkJoinPool, which also runs the locale tasks of every job whose
+ * builder has no executor of its own. Jobs whose DocTypes have the same entities share the
+ * compiled DocType. Each job's result or failure is kept, and a summary of all of them is
+ * printed once every job has finished.
+ */
+public class CsvToStringsXmlBatch {
+
+    // Manifest keys, each prefixed with "<job name>."
+    protected static final String KEY_SPREADSHEET_PATH = "spreadsheetPath";
+    protected static final String KEY_OUTPUT_PATH = "outputPath";
+    protected static final String KEY_EXISTING_RESOURCES_DIR_PATHS = "existingResourcesDirPaths";
+    protected static final String KEY_STRING_ID_COLUMN_TITLE = "stringIdColumnTitle";
+    protected static final String KEY_DEFAULT_LOCALE_CODE = "defaultLocaleCode";
+    protected static final String KEY_SPREADSHEET_DELIMITER = "spreadsheetDelimiter";
+    protected static final String KEY_ENCODING = "encoding";
+    protected static final String KEY_INCREMENTAL = "incremental";
+    protected static final String KEY_DOC_TYPE_PREFIX = "docType.";
+
+    protected final List<Job> jobs = new ArrayList<>();
+    protected int threads = Runtime.getRuntime().availableProcessors();
+
+    public CsvToStringsXmlBatch addJob(String name, CsvToStringsXml.CsvToStringsXmlBuilder builder) {
+        jobs.add(new Job(name, builder));
+        return this;
+    }
+
+    // Threads shared by all jobs. Defaults to the number of processors
+    public CsvToStringsXmlBatch setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Reads jobs from a properties file, where each key is a job name and a setting:
+     *
+     * <pre>
+     * myapp.spreadsheetPath=myapp/translations.tsv
+     * myapp.outputPath=myapp/res
+     * myapp.existingResourcesDirPaths=myapp/old_res,shared/res
+     * myapp.stringIdColumnTitle=Name
+     * myapp.docType.appname=My App
+     * </pre>
+     *
+     * defaultLocaleCode, spreadsheetDelimiter, encoding and incremental can be set as well. Relative
+     * paths are relative to the manifest's directory. Jobs are added in order of name, so
+     * {@link #run()} returns their results in that order, but they run at the same time.
+     */
+    public static CsvToStringsXmlBatch fromManifest(Path manifestPath) throws IOException {
+        Properties manifest = new Properties();
+        InputStream inputStream = new FileInputStream(manifestPath.toFile());
+        try {
+            manifest.load(inputStream);
+        } finally {
+            inputStream.close();
+        }
+
+        File baseDir = manifestPath.toAbsolutePath().getParent().toFile();
+
+        TreeSet<String> jobNames = new TreeSet<>();
+        for (String key : manifest.stringPropertyNames()) {
+            int dot = key.indexOf('.');
+            if (dot > 0) jobNames.add(key.substring(0, dot));
+        }
+
+        CsvToStringsXmlBatch batch = new CsvToStringsXmlBatch();
+        for (String jobName : jobNames) {
+            batch.addJob(jobName, readJob(manifest, jobName, baseDir));
+        }
+        return batch;
+    }
+
+    protected static CsvToStringsXml.CsvToStringsXmlBuilder readJob(Properties manifest, String jobName, File baseDir) {
+        String prefix = jobName + ".";
+        CsvToStringsXml.CsvToStringsXmlBuilder builder = new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setSpreadsheetPath(resolve(baseDir, manifest.getProperty(prefix + KEY_SPREADSHEET_PATH)))
+                .setOutputPath(resolve(baseDir, manifest.getProperty(prefix + KEY_OUTPUT_PATH)))
+                .setStringIdColumnTitle(manifest.getProperty(prefix + KEY_STRING_ID_COLUMN_TITLE));
+
+        String existingResourcesDirPaths = manifest.getProperty(prefix + KEY_EXISTING_RESOURCES_DIR_PATHS);
+        if (existingResourcesDirPaths != null) {
+            for (String existingResourcesDirPath : existingResourcesDirPaths.split(",")) {
+                if (!existingResourcesDirPath.trim().isEmpty()) {
+                    builder.addExistingResourcesDirPath(resolve(baseDir, existingResourcesDirPath.trim()));
+                }
+            }
+        }
+
+        String defaultLocaleCode = manifest.getProperty(prefix + KEY_DEFAULT_LOCALE_CODE);
+        if (defaultLocaleCode != null) builder.setDefaultLocaleCode(defaultLocaleCode);
+
+        String delimiter = manifest.getProperty(prefix + KEY_SPREADSHEET_DELIMITER);
+        if (delimiter != null && !delimiter.isEmpty()) builder.setSpreadsheetDelimiter(delimiter.charAt(0));
+
+        String encoding = manifest.getProperty(prefix + KEY_ENCODING);
+        if (encoding != null) builder.setEncoding(encoding);
+
+        builder.setIncremental(Boolean.parseBoolean(manifest.getProperty(prefix + KEY_INCREMENTAL)));
+
+        CsvToStringsXml.DocTypeBuilder docTypeBuilder = new CsvToStringsXml.DocTypeBuilder();
+        String docTypePrefix = prefix + KEY_DOC_TYPE_PREFIX;
+        // Sorted so equal DocTypes compile to the same text and share a compiled DocType
+        for (String key : new TreeSet<>(manifest.stringPropertyNames())) {
+            if (key.startsWith(docTypePrefix)) {
+                docTypeBuilder.addItem(key.substring(docTypePrefix.length()), manifest.getProperty(key));
+            }
+        }
+        builder.setDocType(docTypeBuilder.build());
+
+        return builder;
+    }
+
+    protected static String resolve(File baseDir, String path) {
+        if (path == null) return null;
+
+        File file = new File(path);
+        return file.isAbsolute() ? path : new File(baseDir, path).getPath();
+    }
+
+    /**
+     * Runs every job and prints a summary once all have finished. A failing job doesn't stop the others.
+     *
+     * @return the result of each job, in the order they were added
+     */
+    public List<JobResult> run() {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ConcurrentHashMap<String, DocTypeReplacer> docTypeReplacers = new ConcurrentHashMap<>();
+        List<JobResult> results = new ArrayList<>();
+
+        try {
+            List<ForkJoinTask<JobResult>> tasks = new ArrayList<>();
+            for (Job job : jobs) {
+                tasks.add(pool.submit(() -> runJob(job, pool, docTypeReplacers)));
+            }
+
+            for (ForkJoinTask<JobResult> task : tasks) {
+                results.add(task.join());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        printSummary(results);
+        return results;
+    }
+
+    protected JobResult runJob(Job job, ForkJoinPool pool, ConcurrentHashMap<String, DocTypeReplacer> docTypeReplacers) {
+        JobResult jobResult = new JobResult(job.name);
+        long start = System.nanoTime();
+
+        try {
+            CsvToStringsXml converter = new CsvToStringsXml(job.builder, pool, docTypeReplacers);
+            jobResult.result = converter.convert();
+        } catch (RuntimeException | Error e) {
+            // Errors too, e.g. a StackOverflowError in one job, or task.join() would throw it and lose every result
+            jobResult.error = e;
+        }
+
+        jobResult.durationNanos = System.nanoTime() - start;
+        return jobResult;
+    }
+
+    protected void printSummary(List<JobResult> results) {
+        int succeeded = 0;
+        StringBuilder jobLines = new StringBuilder();
+
+        for (JobResult jobResult : results) {
+            if (jobResult.isSuccessful()) succeeded++;
+            jobLines.append(jobResult.name).append(": ").append(describe(jobResult)).append('\n');
+        }
+
+        print("\n==========================");
+        print("Batch: " + succeeded + "/" + results.size() + " jobs converted");
+        print(jobLines.toString().trim());
+        print("==========================\n");
+    }
+
+    protected String describe(JobResult jobResult) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(jobResult.durationNanos);
+
+        if (jobResult.error != null) return "FAILED (" + jobResult.error + "), " + millis + " ms";
+
+        ConversionResult result = jobResult.result;
+        if (!result.isFinished()) return "FAILED (stopped early, see the log above), " + millis + " ms";
+
+        String text = result.getWrittenLocales().size() + " locales written, "
+                + result.getUnchangedLocales().size() + " unchanged";
+        if (!result.getFailedLocales().isEmpty()) {
+            text = "FAILED (locales not written: " + new TreeSet<>(result.getFailedLocales()) + "), " + text;
+        }
+        return text + ", " + millis + " ms";
+    }
+
+    protected void print(Object o) {
+        System.out.println(o);
+    }
+
+    /**
+     * Runs the jobs of a manifest, see {@link #fromManifest(Path)}. Exits with status 1 if any job failed.
+     *
+     * Usage: CsvToStringsXmlBatch manifest.properties [threads]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: CsvToStringsXmlBatch manifest.properties [threads]");
+            System.exit(2);
+        }
+
+        CsvToStringsXmlBatch batch = fromManifest(new File(args[0]).toPath());
+        if (args.length > 1) batch.setThreads(Integer.parseInt(args[1]));
+
+        for (JobResult jobResult : batch.run()) {
+            if (!jobResult.isSuccessful()) System.exit(1);
+        }
+    }
+
+    protected static class Job {
+        final String name;
+        final CsvToStringsXml.CsvToStringsXmlBuilder builder;
+
+        Job(String name, CsvToStringsXml.CsvToStringsXmlBuilder builder) {
+            this.name = name;
+            this.builder = builder;
+        }
+    }
+
+    public static class JobResult {
+        protected final String name;
+        protected ConversionResult result;
+        protected Throwable error;
+        protected long durationNanos;
+
+        protected JobResult(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // The job's result, or null if it threw before finishing
+        public ConversionResult getResult() {
+            return result;
+        }
+
+        // What the job threw, or null
+        public Throwable getError() {
+            return error;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        // Whether the job ran to the end and wrote every locale
+        public boolean isSuccessful() {
+            return error == null && result != null && result.isFinished() && result.getFailedLocales().isEmpty();
+        }
+    }
+
+}
@@ -0,0 +1,223 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a {@link CsvToStringsXml} alive and runs it again whenever the spreadsheet or an existing
+ * strings.xml file changes.
+ *
+ * The converter keeps the parsed spreadsheet and existing strings.xml files between runs, and
+ * only files that changed are read again. The DocType is compiled once, when the converter is
+ * built. Each run converts only the locales the changes can affect: the locale of a changed
+ * strings.xml, and the locales whose cells changed in the spreadsheet. Every locale is converted
+ * when the spreadsheet's rows or locales change, or events were lost. Combine with
+ * {@link CsvToStringsXml.CsvToStringsXmlBuilder#setIncremental(boolean)} so of those, only
+ * locales whose output changed are rewritten.
+ */
+public class CsvToStringsXmlWatcher implements Closeable {
+
+    // Editors and exports often write a file in several steps, so events are collected until
+    // none have arrived for this long before running
+    protected static final long DEFAULT_SETTLE_MILLIS = 50;
+
+    protected final CsvToStringsXml converter;
+    protected final WatchService watchService;
+    protected final HashMap<WatchKey, Path> watchedDirs = new HashMap<>();
+
+    protected final Path spreadsheet;
+    protected final Path outputDir;
+    protected final List<Path> resDirs = new ArrayList<>();
+
+    protected long settleMillis = DEFAULT_SETTLE_MILLIS;
+
+    // Changes seen since the last run, see takeChangedLocaleCodes()
+    protected boolean isSpreadsheetChanged = false;
+    protected boolean isEverythingChanged = false;
+    protected final Set<String> changedLocaleCodes = new HashSet<>();
+
+    public CsvToStringsXmlWatcher(CsvToStringsXml converter) throws IOException {
+        this.converter = converter;
+        converter.cacheInputs = true;
+
+        spreadsheet = Paths.get(converter.spreadsheetPath).toAbsolutePath().normalize();
+        outputDir = Paths.get(converter.outputPath).toAbsolutePath().normalize();
+        for (String existingResourcesDirPath : converter.existingResourcesDirPaths) {
+            resDirs.add(Paths.get(existingResourcesDirPath).toAbsolutePath().normalize());
+        }
+
+        watchService = spreadsheet.getFileSystem().newWatchService();
+    }
+
+    public CsvToStringsXmlWatcher setSettleMillis(long settleMillis) {
+        this.settleMillis = settleMillis;
+        return this;
+    }
+
+    /**
+     * Runs the converter, then again after each change, until {@link #close()} is called or the
+     * thread is interrupted.
+     */
+    public void watch() throws IOException, InterruptedException {
+        if (!converter.isBuilderValid) {
+            print("Builder not valid");
+            return;
+        }
+
+        // The directories are watched rather than the files, as many editors save by replacing the file
+        register(spreadsheet.getParent());
+        for (Path resDir : resDirs) {
+            register(resDir);
+            for (Path valuesDir : converter.listValuesDirs(resDir)) {
+                register(valuesDir);
+            }
+        }
+
+        converter.start();
+
+        try {
+            while (true) {
+                boolean changed = handleEvents(watchService.take());
+
+                WatchKey key;
+                while ((key = watchService.poll(settleMillis, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= handleEvents(key);
+                }
+
+                if (!changed) continue;
+
+                Set<String> localeCodes = takeChangedLocaleCodes();
+                if (localeCodes == null) {
+                    print("Change detected, converting");
+                } else if (localeCodes.isEmpty()) {
+                    print("Change detected, no locale affected");
+                    continue;
+                } else {
+                    print("Change detected, converting " + new TreeSet<>(localeCodes));
+                }
+                converter.start(localeCodes);
+            }
+        } catch (ClosedWatchServiceException e) {
+            // close() was called
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    protected void register(Path dir) throws IOException {
+        WatchKey key = dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        watchedDirs.put(key, dir);
+    }
+
+    // Drops cached inputs the events touch, returning whether any of them affect the output
+    protected boolean handleEvents(WatchKey key) throws IOException {
+        Path dir = watchedDirs.get(key);
+        boolean changed = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                converter.invalidateCachedInputs();
+                isSpreadsheetChanged = true;
+                isEverythingChanged = true;
+                changed = true;
+                continue;
+            }
+            if (dir == null) continue;
+
+            changed |= handleEvent(dir, event.kind(), dir.resolve((Path) event.context()));
+        }
+
+        if (!key.reset()) watchedDirs.remove(key);
+        return changed;
+    }
+
+    /**
+     * Notes which locales an event in a watched directory can affect.
+     *
+     * @return false if the path isn't an input, e.g. a generated file or an editor's temp file
+     */
+    protected boolean handleEvent(Path dir, WatchEvent.Kind<?> kind, Path path) throws IOException {
+        // Generated files are never inputs, and reacting to them would convert forever
+        if (path.startsWith(outputDir)) return false;
+
+        String fileName = path.getFileName().toString();
+
+        if (path.equals(spreadsheet)) {
+            // Compared with the cached spreadsheet by takeChangedLocaleCodes()
+            isSpreadsheetChanged = true;
+            return true;
+        }
+
+        if (resDirs.contains(dir) && fileName.startsWith(CsvToStringsXml.STRING_VALUES_DIR_PREFIX)) {
+            // A values directory was added or removed
+            if (kind == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) register(path);
+            converter.invalidateCachedInput(path.resolve(CsvToStringsXml.STRINGS_XML));
+            changedLocaleCodes.add(converter.getLocaleCode(fileName));
+            return true;
+        }
+
+        if (fileName.equals(CsvToStringsXml.STRINGS_XML) && resDirs.contains(dir.getParent())) {
+            converter.invalidateCachedInput(path);
+            changedLocaleCodes.add(converter.getLocaleCode(dir.getFileName().toString()));
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads the spreadsheet again if it changed, and clears the changes seen so far.
+     *
+     * @return locales the changes can affect, or null if they can affect every locale
+     */
+    protected Set<String> takeChangedLocaleCodes() {
+        Set<String> localeCodes = isEverythingChanged ? null : new HashSet<>(changedLocaleCodes);
+
+        if (isSpreadsheetChanged) {
+            Set<String> spreadsheetLocaleCodes;
+            try {
+                spreadsheetLocaleCodes = converter.readChangedSpreadsheetLocales();
+            } catch (IOException e) {
+                // The run reads it again and reports the failure
+                spreadsheetLocaleCodes = null;
+            }
+
+            if (spreadsheetLocaleCodes == null) {
+                localeCodes = null;
+            } else if (localeCodes != null) {
+                localeCodes.addAll(spreadsheetLocaleCodes);
+            }
+        }
+
+        isSpreadsheetChanged = false;
+        isEverythingChanged = false;
+        changedLocaleCodes.clear();
+        return localeCodes;
+    }
+
+    protected void print(Object o) {
+        System.out.println(o);
+    }
+
+}
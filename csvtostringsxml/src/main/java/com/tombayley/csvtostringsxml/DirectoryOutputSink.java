@@ -0,0 +1,38 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Writes each strings.xml under a res directory, replacing files atomically through an
+ * {@link AtomicFileWriter}. This is what {@link CsvToStringsXml#convert()} writes to.
+ */
+public class DirectoryOutputSink implements OutputSink {
+
+    protected final Path dir;
+    protected final AtomicFileWriter fileWriter;
+
+    public DirectoryOutputSink(Path dir) {
+        this(dir, CsvToStringsXml.FsyncPolicy.NONE);
+    }
+
+    public DirectoryOutputSink(Path dir, CsvToStringsXml.FsyncPolicy fsyncPolicy) {
+        this.dir = dir;
+        this.fileWriter = new AtomicFileWriter(fsyncPolicy);
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    @Override
+    public boolean write(String localeCode, String path, byte[] bytes) throws IOException {
+        return fileWriter.write(dir.resolve(path), bytes);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        fileWriter.finish();
+    }
+
+}
@@ -0,0 +1,244 @@
+package com.tombayley.csvtostringsxml;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces DocType entity values with their {@code &key;} references in a single scan, using an
+ * Aho-Corasick automaton compiled once from the DocType entities.
+ *
+ * Matches are chosen leftmost-longest and never overlap: scanning from the start of the string,
+ * the earliest starting match wins, and of the matches starting there the longest wins. If two
+ * entities share the same value, the one whose key sorts first wins, so the result doesn't depend
+ * on the order of the DocType's entity map.
+ * References that are already in the text ({@code &key;}) are matched as well, so they are
+ * counted and never have part of them replaced.
+ */
+public class DocTypeReplacer {
+
+    public interface OccurrenceListener {
+        void onOccurrences(int entityIndex, int occurrences);
+    }
+
+    protected final String[] keys;
+    protected final CsvToStringsXml.DocType.Item[] items;
+    protected final String[] references;
+
+    protected final String[] patternReplacements;
+    protected final int[] patternEntities;
+    protected final int[] patternLengths;
+
+    protected final Node root = new Node(0);
+
+    public DocTypeReplacer(Map<String, CsvToStringsXml.DocType.Item> entities) {
+        int entityCount = entities.size();
+        keys = new String[entityCount];
+        items = new CsvToStringsXml.DocType.Item[entityCount];
+        references = new String[entityCount];
+
+        List<String> patterns = new ArrayList<>();
+        List<Integer> patternEntityList = new ArrayList<>();
+
+        // Entities are indexed by sorted key, and of patterns with the same text the first added wins
+        List<String> sortedKeys = new ArrayList<>(entities.keySet());
+        Collections.sort(sortedKeys);
+
+        int entityIndex = 0;
+        for (String key : sortedKeys) {
+            keys[entityIndex] = key;
+            items[entityIndex] = entities.get(key);
+            references[entityIndex] = String.format(CsvToStringsXml.DOC_TYPE_TEMPLATE, key);
+
+            String value = items[entityIndex].value;
+            if (value != null && !value.isEmpty()) {
+                patterns.add(value);
+                patternEntityList.add(entityIndex);
+            }
+            patterns.add(references[entityIndex]);
+            patternEntityList.add(entityIndex);
+
+            entityIndex++;
+        }
+
+        int patternCount = patterns.size();
+        patternReplacements = new String[patternCount];
+        patternEntities = new int[patternCount];
+        patternLengths = new int[patternCount];
+
+        for (int i = 0; i < patternCount; i++) {
+            String pattern = patterns.get(i);
+            patternEntities[i] = patternEntityList.get(i);
+            patternReplacements[i] = references[patternEntities[i]];
+            patternLengths[i] = pattern.length();
+            addPattern(pattern, i);
+        }
+
+        buildFailureLinks();
+    }
+
+    public int getEntityCount() {
+        return keys.length;
+    }
+
+    public String getKey(int entityIndex) {
+        return keys[entityIndex];
+    }
+
+    public CsvToStringsXml.DocType.Item getItem(int entityIndex) {
+        return items[entityIndex];
+    }
+
+    /**
+     * @param listener notified once per entity found in the text, with the number of references to it
+     *                 in the returned string. May be null
+     */
+    public String replace(String text, OccurrenceListener listener) {
+        if (patternLengths.length == 0) return text;
+
+        int length = text.length();
+
+        // Length and pattern of the longest match starting at each position, allocated on first match
+        int[] matchLengths = null;
+        int[] matchPatterns = null;
+
+        Node node = root;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+
+            Node next;
+            while ((next = node.child(c)) == null && node != root) {
+                node = node.failure;
+            }
+            node = next == null ? root : next;
+
+            for (Node output = node.pattern >= 0 ? node : node.output; output != null; output = output.output) {
+                int start = i - output.depth + 1;
+                if (matchLengths == null) {
+                    matchLengths = new int[length];
+                    matchPatterns = new int[length];
+                }
+                if (output.depth > matchLengths[start]) {
+                    matchLengths[start] = output.depth;
+                    matchPatterns[start] = output.pattern;
+                }
+            }
+        }
+
+        if (matchLengths == null) return text;
+
+        StringBuilder stringBuilder = new StringBuilder(length + 16);
+        int[] occurrences = new int[keys.length];
+
+        int copyFrom = 0;
+        int i = 0;
+        while (i < length) {
+            int matchLength = matchLengths[i];
+            if (matchLength == 0) {
+                i++;
+                continue;
+            }
+
+            int pattern = matchPatterns[i];
+            stringBuilder.append(text, copyFrom, i).append(patternReplacements[pattern]);
+            occurrences[patternEntities[pattern]]++;
+
+            i += matchLength;
+            copyFrom = i;
+        }
+        stringBuilder.append(text, copyFrom, length);
+
+        if (listener != null) {
+            for (int entityIndex = 0; entityIndex < occurrences.length; entityIndex++) {
+                if (occurrences[entityIndex] == 0) continue;
+                listener.onOccurrences(entityIndex, occurrences[entityIndex]);
+            }
+        }
+
+        return stringBuilder.toString();
+    }
+
+    protected void addPattern(String pattern, int patternIndex) {
+        Node node = root;
+        for (int i = 0; i < pattern.length(); i++) {
+            node = node.addChild(pattern.charAt(i));
+        }
+
+        // Keep the first pattern registered for a value
+        if (node.pattern < 0) node.pattern = patternIndex;
+    }
+
+    protected void buildFailureLinks() {
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        for (int i = 0; i < root.childCount; i++) {
+            Node child = root.children[i];
+            child.failure = root;
+            queue.add(child);
+        }
+
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+
+            for (int i = 0; i < node.childCount; i++) {
+                char c = node.keys[i];
+                Node child = node.children[i];
+
+                Node failure = node.failure;
+                Node target;
+                while ((target = failure.child(c)) == null && failure != root) {
+                    failure = failure.failure;
+                }
+                child.failure = target == null ? root : target;
+                child.output = child.failure.pattern >= 0 ? child.failure : child.failure.output;
+
+                queue.add(child);
+            }
+        }
+    }
+
+    protected static class Node {
+        final int depth;
+        int pattern = -1;
+        Node failure;
+        // Nearest node on the failure chain that ends a pattern
+        Node output;
+
+        // Sorted by key for binary search
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        int childCount = 0;
+
+        Node(int depth) {
+            this.depth = depth;
+        }
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(keys, 0, childCount, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node addChild(char c) {
+            int index = Arrays.binarySearch(keys, 0, childCount, c);
+            if (index >= 0) return children[index];
+
+            int insertAt = -index - 1;
+            if (childCount == keys.length) {
+                int capacity = Math.max(2, childCount * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(keys, insertAt, keys, insertAt + 1, childCount - insertAt);
+            System.arraycopy(children, insertAt, children, insertAt + 1, childCount - insertAt);
+
+            Node child = new Node(depth + 1);
+            keys[insertAt] = c;
+            children[insertAt] = child;
+            childCount++;
+            return child;
+        }
+    }
+
+}
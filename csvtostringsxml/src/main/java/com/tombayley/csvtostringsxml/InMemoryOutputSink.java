@@ -0,0 +1,47 @@
+package com.tombayley.csvtostringsxml;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps each locale's strings.xml as a byte array, for callers that pass the files on themselves.
+ */
+public class InMemoryOutputSink implements OutputSink {
+
+    protected final ConcurrentHashMap<String, byte[]> files = new ConcurrentHashMap<>();
+    protected final ConcurrentHashMap<String, String> paths = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean write(String localeCode, String path, byte[] bytes) {
+        files.put(localeCode, bytes);
+        paths.put(localeCode, path);
+        return true;
+    }
+
+    /**
+     * @return the strings.xml of the locale, or null if it wasn't written
+     */
+    public byte[] getBytes(String localeCode) {
+        return files.get(localeCode);
+    }
+
+    /**
+     * @return path of the locale's strings.xml in a res directory, e.g. "values-de/strings.xml"
+     */
+    public String getPath(String localeCode) {
+        return paths.get(localeCode);
+    }
+
+    // Locale code to strings.xml, sorted by locale code
+    public Map<String, byte[]> getFiles() {
+        return Collections.unmodifiableMap(new TreeMap<>(files));
+    }
+
+    public void clear() {
+        files.clear();
+        paths.clear();
+    }
+
+}
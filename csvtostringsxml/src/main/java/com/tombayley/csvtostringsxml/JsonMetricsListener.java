@@ -0,0 +1,197 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Collects the metrics of each conversion run and writes them as a JSON summary once the run has
+ * finished, either to a file or to a stream (System.out by default). Runs at the same time are
+ * kept apart and each gets its own summary.
+ *
+ * <pre>
+ * {"durationMs":..,"stages":[{"name":..,"durationMs":..,"items":..,"itemsPerSecond":..,"allocatedBytes":..}],
+ *  "bytesWritten":..,"locales":{"de":{"bytes":..}},"skippedLocales":[..]}
+ * </pre>
+ */
+public class JsonMetricsListener implements ConversionListener {
+
+    protected final File file;
+    protected final PrintStream printStream;
+
+    // Metrics of the runs that haven't finished yet
+    protected final Map<ConversionRun, RunMetrics> runs = new HashMap<>();
+    protected String json;
+
+    public JsonMetricsListener() {
+        this(System.out);
+    }
+
+    public JsonMetricsListener(PrintStream printStream) {
+        this.file = null;
+        this.printStream = printStream;
+    }
+
+    /**
+     * The file holds the summary of the last run to finish.
+     */
+    public JsonMetricsListener(File file) {
+        this.file = file;
+        this.printStream = null;
+    }
+
+    @Override
+    public synchronized void onConversionStarted(ConversionRun run) {
+        runs.put(run, new RunMetrics());
+    }
+
+    @Override
+    public synchronized void onStageFinished(ConversionRun run, String stage, long durationNanos, long items, long allocatedBytes) {
+        getRunMetrics(run).stages.add(new Stage(stage, durationNanos, items, allocatedBytes));
+    }
+
+    @Override
+    public synchronized void onLocaleWritten(ConversionRun run, String localeCode, long bytes) {
+        getRunMetrics(run).bytesPerLocale.put(localeCode, bytes);
+    }
+
+    @Override
+    public synchronized void onLocaleSkipped(ConversionRun run, String localeCode) {
+        getRunMetrics(run).skippedLocales.add(localeCode);
+    }
+
+    @Override
+    public synchronized void onConversionFinished(ConversionRun run, long durationNanos) {
+        json = toJson(getRunMetrics(run), durationNanos);
+        runs.remove(run);
+
+        if (printStream != null) {
+            printStream.println(json);
+            return;
+        }
+
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+            writer.write(json);
+            writer.write('\n');
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    protected RunMetrics getRunMetrics(ConversionRun run) {
+        return runs.computeIfAbsent(run, k -> new RunMetrics());
+    }
+
+    // The summary of the last finished conversion, or null
+    public synchronized String getJson() {
+        return json;
+    }
+
+    protected String toJson(RunMetrics metrics, long durationNanos) {
+        List<Stage> stages = metrics.stages;
+        Map<String, Long> bytesPerLocale = metrics.bytesPerLocale;
+        Set<String> skippedLocales = metrics.skippedLocales;
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"durationMs\":").append(toMillis(durationNanos));
+
+        json.append(",\"stages\":[");
+        for (int i = 0; i < stages.size(); i++) {
+            Stage stage = stages.get(i);
+            if (i > 0) json.append(',');
+
+            double seconds = stage.durationNanos / 1e9;
+            json.append("{\"name\":").append(quote(stage.name))
+                    .append(",\"durationMs\":").append(toMillis(stage.durationNanos))
+                    .append(",\"items\":").append(stage.items)
+                    .append(",\"itemsPerSecond\":").append(seconds > 0 ? Math.round(stage.items / seconds) : 0)
+                    .append(",\"allocatedBytes\":").append(stage.allocatedBytes)
+                    .append('}');
+        }
+        json.append(']');
+
+        long bytesWritten = 0;
+        for (long bytes : bytesPerLocale.values()) bytesWritten += bytes;
+        json.append(",\"bytesWritten\":").append(bytesWritten);
+
+        json.append(",\"locales\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> locale : bytesPerLocale.entrySet()) {
+            if (!first) json.append(',');
+            first = false;
+            json.append(quote(locale.getKey())).append(":{\"bytes\":").append(locale.getValue()).append('}');
+        }
+        json.append('}');
+
+        json.append(",\"skippedLocales\":[");
+        first = true;
+        for (String localeCode : skippedLocales) {
+            if (!first) json.append(',');
+            first = false;
+            json.append(quote(localeCode));
+        }
+        json.append("]}");
+
+        return json.toString();
+    }
+
+    protected static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    protected static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    protected static class RunMetrics {
+        final List<Stage> stages = new ArrayList<>();
+        final Map<String, Long> bytesPerLocale = new TreeMap<>();
+        final Set<String> skippedLocales = new TreeSet<>();
+    }
+
+    protected static class Stage {
+        final String name;
+        final long durationNanos;
+        final long items;
+        final long allocatedBytes;
+
+        Stage(String name, long durationNanos, long items, long allocatedBytes) {
+            this.name = name;
+            this.durationNanos = durationNanos;
+            this.items = items;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+}
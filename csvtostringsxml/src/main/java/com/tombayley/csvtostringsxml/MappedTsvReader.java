@@ -0,0 +1,441 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Reads a tab separated file by mapping it into memory and splitting rows and cells on bytes, so
+ * only the cells that are wanted are ever decoded.
+ *
+ * Rows come out as OpenCSV's {@code RFC4180Parser} returns them: a cell wrapped in quotes may hold
+ * tabs, line breaks (returned as {@code \n}) and doubled quotes. OpenCSV has its own rules for
+ * quotes anywhere else, so those throw {@link IrregularQuotingException} instead, and the file
+ * should be read again with OpenCSV.
+ *
+ * Only works for charsets in which tabs, quotes and line breaks are single bytes that never appear
+ * inside another character, see {@link #isSupported(Charset)}.
+ */
+public class MappedTsvReader implements Closeable {
+
+    public static class IrregularQuotingException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public IrregularQuotingException(String message) {
+            super(message);
+        }
+    }
+
+    protected static final byte TAB = '\t';
+    protected static final byte QUOTE = '"';
+    protected static final byte CR = '\r';
+    protected static final byte LF = '\n';
+
+    // A single mapping can't be larger than 2GB, so larger files are mapped in segments of 1GB
+    protected static final int DEFAULT_SEGMENT_SHIFT = 30;
+
+    protected final int segmentShift;
+    protected final long segmentMask;
+
+    protected final FileChannel channel;
+    protected final MappedByteBuffer[] segments;
+    protected final ByteBuffer[] segmentReaders;
+    // End of the range this reader reads, which is the end of the file unless it is a slice
+    protected final long length;
+    protected final Charset charset;
+    protected final boolean isSlice;
+
+    protected long position = 0;
+    protected boolean limitColumnsToHeader = false;
+    protected int maxColumns = Integer.MAX_VALUE;
+    protected boolean isHeaderRead = false;
+
+    // Decide from the header which columns are decoded, and from the first cell which rows are
+    protected Predicate<String> columnFilter = null;
+    protected Predicate<String> rowFilter = null;
+    protected boolean[] wantedColumns = null;
+
+    // Bytes of the cell being decoded, reused across cells
+    protected byte[] cellBytes = new byte[256];
+    protected final ArrayList<String> cells = new ArrayList<>();
+
+    public MappedTsvReader(Path path, Charset charset) throws IOException {
+        this(path, charset, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /**
+     * @param segmentShift log2 of the size of each mapped segment. Smaller segments are only useful
+     *                     to test rows that cross from one segment into the next
+     */
+    protected MappedTsvReader(Path path, Charset charset, int segmentShift) throws IOException {
+        this.charset = charset;
+        this.segmentShift = segmentShift;
+        segmentMask = (1L << segmentShift) - 1;
+        isSlice = false;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            length = channel.size();
+            long segmentSize = 1L << segmentShift;
+            int segmentCount = (int) ((length + segmentSize - 1) >>> segmentShift);
+            segments = new MappedByteBuffer[segmentCount];
+            segmentReaders = new ByteBuffer[segmentCount];
+
+            for (int i = 0; i < segmentCount; i++) {
+                long start = (long) i << segmentShift;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, length - start));
+                segmentReaders[i] = segments[i].duplicate();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    protected MappedTsvReader(MappedTsvReader parent, long start, long end) {
+        charset = parent.charset;
+        segmentShift = parent.segmentShift;
+        segmentMask = parent.segmentMask;
+        isSlice = true;
+        channel = parent.channel;
+        segments = parent.segments;
+        length = end;
+        position = start;
+
+        // Positions are per reader, so each slice gets its own views of the mapping
+        segmentReaders = new ByteBuffer[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            segmentReaders[i] = segments[i].duplicate();
+        }
+
+        limitColumnsToHeader = parent.limitColumnsToHeader;
+        maxColumns = parent.maxColumns;
+        isHeaderRead = true;
+        columnFilter = parent.columnFilter;
+        rowFilter = parent.rowFilter;
+        wantedColumns = parent.wantedColumns;
+    }
+
+    public static boolean isSupported(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Cuts every row after the first off at the header's first empty cell, which is where the
+     * locale codes end. Cells past it are skipped without being decoded.
+     */
+    public MappedTsvReader setLimitColumnsToHeader(boolean limitColumnsToHeader) {
+        this.limitColumnsToHeader = limitColumnsToHeader;
+        return this;
+    }
+
+    /**
+     * Columns after the first whose header cell fails the filter are returned as null, without
+     * being decoded. The header row itself is returned whole.
+     */
+    public MappedTsvReader setColumnFilter(Predicate<String> columnFilter) {
+        this.columnFilter = columnFilter;
+        return this;
+    }
+
+    /**
+     * Rows after the header whose first cell fails the filter are skipped, without the rest of
+     * their cells being decoded.
+     */
+    public MappedTsvReader setRowFilter(Predicate<String> rowFilter) {
+        this.rowFilter = rowFilter;
+        return this;
+    }
+
+    /**
+     * A reader of the rows between two row starts, sharing this reader's mapping so it can be read
+     * on another thread. Reads rows after the header, cut off as this reader cuts them off.
+     */
+    public MappedTsvReader slice(long start, long end) {
+        return new MappedTsvReader(this, start, end);
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Splits the rest of the file into ranges of about chunkSize bytes, each starting at the start
+     * of a row.
+     *
+     * Only quotes can tell a line break inside a cell from one that ends a row, so this scans every
+     * byte from the current position, but does nothing else with them. Quoting that isn't RFC 4180
+     * can put the boundaries in the wrong place; that quoting throws once the slices are read.
+     *
+     * @return row start positions, the first being the current position and the last the end of
+     * the file
+     */
+    public long[] findChunkStarts(long chunkSize) {
+        ArrayList<Long> chunkStarts = new ArrayList<>();
+        chunkStarts.add(position);
+
+        boolean isInQuotes = false;
+        long nextChunk = position + chunkSize;
+
+        long index = position;
+        while (index < length) {
+            MappedByteBuffer segment = segments[(int) (index >>> segmentShift)];
+            long segmentStart = index & ~segmentMask;
+            int limit = segment.limit();
+
+            for (int i = (int) (index & segmentMask); i < limit; i++) {
+                byte b = segment.get(i);
+                if (b > QUOTE || b < 0) continue;
+
+                if (b == QUOTE) {
+                    // Doubled quotes flip twice, so only opening and closing quotes change the state
+                    isInQuotes = !isInQuotes;
+                } else if (!isInQuotes && (b == LF || b == CR) && segmentStart + i >= nextChunk) {
+                    long rowStart = segmentStart + i + 1;
+                    if (b == CR && rowStart < length && byteAt(rowStart) == LF) rowStart++;
+                    if (rowStart >= length) break;
+
+                    chunkStarts.add(rowStart);
+                    nextChunk = rowStart + chunkSize;
+                }
+            }
+            index = segmentStart + limit;
+        }
+        chunkStarts.add(length);
+
+        long[] starts = new long[chunkStarts.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = chunkStarts.get(i);
+        }
+        return starts;
+    }
+
+    /**
+     * @return the rest of the rows
+     */
+    public List<String[]> readAll() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        String[] row;
+        while ((row = readNext()) != null) {
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * @return the next row, or null at the end of the file
+     */
+    public String[] readNext() throws IOException {
+        while (position < length) {
+            String[] row = readRow();
+            if (row != null) return row;
+        }
+        return null;
+    }
+
+    // Reads the row at the current position, returning null if the row filter skips it
+    protected String[] readRow() throws IOException {
+        cells.clear();
+        int column = 0;
+        boolean isSkipped = false;
+
+        while (true) {
+            boolean isKept = !isSkipped && column < maxColumns;
+            boolean isWanted = isKept && isColumnWanted(column);
+            if (position < length && byteAt(position) == QUOTE) {
+                readQuotedCell(isWanted);
+            } else {
+                readCell(isWanted);
+            }
+            if (isKept && !isWanted) cells.add(null);
+
+            if (column == 0 && isHeaderRead && rowFilter != null && !rowFilter.test(cells.get(0))) isSkipped = true;
+            column++;
+
+            if (position >= length) break;
+
+            byte separator = byteAt(position++);
+            if (separator == TAB) continue;
+
+            if (separator == CR && position < length && byteAt(position) == LF) position++;
+            break;
+        }
+
+        if (isSkipped) return null;
+
+        String[] row = cells.toArray(new String[cells.size()]);
+
+        if (!isHeaderRead) {
+            isHeaderRead = true;
+            if (limitColumnsToHeader) maxColumns = getHeaderLength(row);
+            if (columnFilter != null) wantedColumns = getWantedColumns(row);
+        }
+
+        return row;
+    }
+
+    protected boolean isColumnWanted(int column) {
+        return wantedColumns == null || column >= wantedColumns.length || wantedColumns[column];
+    }
+
+    // The first column is always wanted, as it holds the string ids
+    protected boolean[] getWantedColumns(String[] header) {
+        boolean[] wanted = new boolean[header.length];
+        for (int i = 0; i < header.length; i++) {
+            wanted[i] = i == 0 || columnFilter.test(header[i]);
+        }
+        return wanted;
+    }
+
+    // Wraps read failures in a RuntimeException, as OpenCSV's CSVIterator does
+    public Iterator<String[]> iterator() {
+        return new Iterator<String[]>() {
+            String[] next = readNextUnchecked();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String[] next() {
+                if (next == null) throw new NoSuchElementException();
+                String[] row = next;
+                next = readNextUnchecked();
+                return row;
+            }
+        };
+    }
+
+    // Slices share the mapping, so only the reader that mapped the file closes it
+    @Override
+    public void close() throws IOException {
+        if (!isSlice) channel.close();
+    }
+
+    protected String[] readNextUnchecked() {
+        try {
+            return readNext();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // The string id column is always needed, even if the header is empty
+    protected int getHeaderLength(String[] header) {
+        for (int i = 0; i < header.length; i++) {
+            if (header[i].isEmpty()) return Math.max(1, i);
+        }
+        return Math.max(1, header.length);
+    }
+
+    // Reads up to the next tab, line break or end of file
+    protected void readCell(boolean isWanted) throws IOException {
+        long start = position;
+        position = findCellEnd(position);
+
+        if (!isWanted) return;
+
+        int cellLength = (int) (position - start);
+        ensureCellCapacity(cellLength);
+        copyBytes(start, cellLength);
+        cells.add(new String(cellBytes, 0, cellLength, charset));
+    }
+
+    // Reads from the opening quote up to just after the closing one, unescaping as it goes
+    protected void readQuotedCell(boolean isWanted) throws IOException {
+        long start = position;
+        position++;
+        int cellLength = 0;
+
+        while (true) {
+            if (position >= length) throw new IrregularQuotingException("Unterminated quoted cell at byte " + start);
+
+            byte b = byteAt(position++);
+
+            if (b == QUOTE) {
+                if (position < length && byteAt(position) == QUOTE) {
+                    position++;
+                } else {
+                    if (position < length) {
+                        byte next = byteAt(position);
+                        if (next != TAB && next != LF && next != CR) {
+                            throw new IrregularQuotingException("Text after a closing quote at byte " + position);
+                        }
+                    }
+                    break;
+                }
+            } else if (b == CR || b == LF) {
+                // OpenCSV reads line by line and joins the lines of a cell with \n
+                if (b == CR && position < length && byteAt(position) == LF) position++;
+                b = LF;
+            }
+
+            if (!isWanted) continue;
+
+            if (cellLength == cellBytes.length) cellBytes = Arrays.copyOf(cellBytes, cellLength * 2);
+            cellBytes[cellLength++] = b;
+        }
+
+        if (isWanted) cells.add(new String(cellBytes, 0, cellLength, charset));
+    }
+
+    // Scans a segment at a time, as this loop sees nearly every byte of the file
+    protected long findCellEnd(long from) throws IOException {
+        while (from < length) {
+            MappedByteBuffer segment = segments[(int) (from >>> segmentShift)];
+            long segmentStart = from & ~segmentMask;
+            int limit = segment.limit();
+
+            for (int i = (int) (from & segmentMask); i < limit; i++) {
+                byte b = segment.get(i);
+                // Text is mostly letters and multi-byte characters, which are all above the quote
+                if (b > QUOTE || b < 0) continue;
+
+                if (b == TAB || b == LF || b == CR) return segmentStart + i;
+                if (b == QUOTE) throw new IrregularQuotingException("Quote inside an unquoted cell at byte " + (segmentStart + i));
+            }
+            from = segmentStart + limit;
+        }
+        return length;
+    }
+
+    protected byte byteAt(long index) {
+        return segments[(int) (index >>> segmentShift)].get((int) (index & segmentMask));
+    }
+
+    protected void ensureCellCapacity(int capacity) {
+        if (capacity <= cellBytes.length) return;
+        cellBytes = Arrays.copyOf(cellBytes, Math.max(capacity, cellBytes.length * 2));
+    }
+
+    // Bulk copies the bytes of a cell into cellBytes, which may span two segments
+    protected void copyBytes(long start, int count) {
+        int copied = 0;
+        while (copied < count) {
+            long index = start + copied;
+            ByteBuffer segment = segmentReaders[(int) (index >>> segmentShift)];
+            int offset = (int) (index & segmentMask);
+            int chunk = Math.min(count - copied, segment.capacity() - offset);
+
+            segment.position(offset);
+            segment.get(cellBytes, copied, chunk);
+            copied += chunk;
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.IOException;
+
+/**
+ * Where a conversion puts the strings.xml of each locale. Writes can come from the executor's
+ * threads when one is set, so implementations must be thread-safe.
+ *
+ * @see DirectoryOutputSink
+ * @see InMemoryOutputSink
+ * @see StreamOutputSink
+ */
+public interface OutputSink {
+
+    /**
+     * @param path  where the file goes in an Android res directory, e.g. "values-de/strings.xml"
+     * @param bytes the whole file, in the converter's encoding
+     * @return false if the sink already held these bytes, so nothing was written
+     */
+    boolean write(String localeCode, String path, byte[] bytes) throws IOException;
+
+    /**
+     * Called once every locale has been written.
+     */
+    default void finish() throws IOException {
+    }
+
+}
@@ -0,0 +1,233 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Keeps the parsed strings of existing strings.xml files on disk between runs, so files that
+ * haven't changed are hashed and loaded with one sequential read instead of being parsed again.
+ *
+ * Each file gets an entry in the cache directory, named by a hash of its path and the encoding. An
+ * entry holds the file's content hash and its translatable strings. The file is always read and
+ * hashed, as its size and modified time can stay the same when it changes, e.g. when it is
+ * rewritten within the file system's timestamp resolution. Entries are replaced atomically, so runs
+ * can share the directory, and {@link #trim()} deletes the least recently used once it is over its
+ * size limit.
+ *
+ * Strings are kept before the converter's string id filter is applied, so changing the filter
+ * doesn't make entries stale.
+ */
+public class ResourceCache {
+
+    // Bump when StringsXmlReader changes which strings it keeps or the entry layout changes
+    protected static final int FORMAT_VERSION = 2;
+    protected static final int MAGIC = 0x43535843;
+    protected static final String ENTRY_SUFFIX = ".strings";
+
+    protected final Path dir;
+    protected final long maxBytes;
+    protected final String encoding;
+    protected final AtomicFileWriter fileWriter = new AtomicFileWriter(CsvToStringsXml.FsyncPolicy.NONE);
+
+    /**
+     * @param maxBytes size the directory is trimmed to by {@link #trim()}
+     */
+    public ResourceCache(Path dir, long maxBytes, String encoding) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.encoding = encoding;
+    }
+
+    /**
+     * The translatable strings of a strings.xml file, in file order, from its entry if the file's
+     * contents haven't changed and parsed otherwise. The map is the caller's to change.
+     */
+    public LinkedHashMap<String, String> get(Path file) throws IOException, XMLStreamException {
+        file = file.toAbsolutePath().normalize();
+        Path entryFile = getEntryFile(file);
+
+        byte[] contents = Files.readAllBytes(file);
+        byte[] hash = hash(contents);
+
+        Entry entry = readEntry(entryFile, file);
+        if (entry != null && Arrays.equals(entry.hash, hash)) {
+            touch(entryFile);
+            return entry.strings;
+        }
+
+        InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(contents), encoding);
+        Entry newEntry = new Entry();
+        newEntry.hash = hash;
+        newEntry.strings = new StringsXmlReader(reader).readStrings();
+        fileWriter.write(entryFile, writeEntry(file, newEntry));
+
+        return newEntry.strings;
+    }
+
+    /**
+     * Deletes the least recently used entries until the directory is within its size limit.
+     */
+    public void trim() throws IOException {
+        if (!Files.isDirectory(dir)) return;
+
+        List<Path> entryFiles = new ArrayList<>();
+        DirectoryStream<Path> directoryStream = Files.newDirectoryStream(dir, "*" + ENTRY_SUFFIX);
+        try {
+            for (Path path : directoryStream) {
+                entryFiles.add(path);
+            }
+        } finally {
+            directoryStream.close();
+        }
+
+        long totalBytes = 0;
+        Map<Path, Long> lastUsed = new LinkedHashMap<>();
+        for (Path entryFile : entryFiles) {
+            try {
+                totalBytes += Files.size(entryFile);
+                lastUsed.put(entryFile, Files.getLastModifiedTime(entryFile).toMillis());
+            } catch (NoSuchFileException e) {
+                // Trimmed by another run
+            }
+        }
+        if (totalBytes <= maxBytes) return;
+
+        List<Path> oldestFirst = new ArrayList<>(lastUsed.keySet());
+        oldestFirst.sort((a, b) -> Long.compare(lastUsed.get(a), lastUsed.get(b)));
+
+        for (Path entryFile : oldestFirst) {
+            if (totalBytes <= maxBytes) break;
+            try {
+                totalBytes -= Files.size(entryFile);
+                Files.delete(entryFile);
+            } catch (NoSuchFileException e) {
+                // Trimmed by another run
+            }
+        }
+    }
+
+    // Entries are named by path and encoding, as the same bytes decode to other strings in another encoding
+    protected Path getEntryFile(Path file) {
+        byte[] key = (encoding + '\n' + file).getBytes(StandardCharsets.UTF_8);
+
+        StringBuilder name = new StringBuilder();
+        for (byte b : hash(key)) {
+            name.append(String.format("%02x", b));
+        }
+        return dir.resolve(name.append(ENTRY_SUFFIX).toString());
+    }
+
+    // Recently used entries have newer modified times, for trim()
+    protected void touch(Path entryFile) {
+        try {
+            Files.setLastModifiedTime(entryFile, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only makes the entry more likely to be trimmed
+        }
+    }
+
+    /**
+     * @return null if there is no entry for the file, or it was written by another version or is
+     * damaged
+     */
+    protected Entry readEntry(Path entryFile, Path file) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(entryFile);
+        } catch (IOException e) {
+            return null;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+            // Guards against two paths whose names hash the same
+            if (!in.readUTF().equals(encoding) || !in.readUTF().equals(file.toString())) return null;
+
+            Entry entry = new Entry();
+            entry.hash = new byte[in.readUnsignedByte()];
+            in.readFully(entry.hash);
+
+            int count = in.readInt();
+            entry.strings = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String stringId = readString(in, bytes);
+                entry.strings.put(stringId, readString(in, bytes));
+            }
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    protected byte[] writeEntry(Path file, Entry entry) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(encoding);
+        out.writeUTF(file.toString());
+        out.writeByte(entry.hash.length);
+        out.write(entry.hash);
+
+        out.writeInt(entry.strings.size());
+        for (Map.Entry<String, String> string : entry.strings.entrySet()) {
+            writeString(out, string.getKey());
+            writeString(out, string.getValue());
+        }
+
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    // Length prefixed UTF-8, as writeUTF is limited to 64KB
+    protected static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Decoded straight from the entry's bytes, at the stream's position
+    protected static String readString(DataInputStream in, byte[] bytes) throws IOException {
+        int length = in.readInt();
+        int offset = bytes.length - in.available();
+        if (length < 0 || length > in.available()) throw new IOException("Damaged entry");
+
+        in.skipBytes(length);
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    protected static byte[] hash(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    protected static class Entry {
+        byte[] hash;
+        LinkedHashMap<String, String> strings;
+    }
+
+}
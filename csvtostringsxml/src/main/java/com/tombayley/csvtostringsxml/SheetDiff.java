@@ -0,0 +1,190 @@
+package com.tombayley.csvtostringsxml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The strings added, removed and changed in each locale between two versions of the translations.
+ * Made by {@link CsvToStringsXml#diff(java.nio.file.Path)} and
+ * {@link CsvToStringsXml#diffWithResources(java.nio.file.Path)}.
+ *
+ * Cells are compared by 64-bit fingerprints of their text. Only the fingerprints of the earlier
+ * version are kept, not its text, and the later version is compared with them in one pass.
+ */
+public class SheetDiff {
+
+    // Fingerprint of a missing or empty cell
+    protected static final long NO_TEXT = 0;
+
+    protected final TreeMap<String, LocaleChanges> changes = new TreeMap<>();
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * @return locales with at least one added, removed or changed string, sorted. Converting only
+     * these with {@link CsvToStringsXml#convert(Set)} rewrites every strings.xml that would change
+     */
+    public Set<String> getChangedLocales() {
+        return Collections.unmodifiableSet(changes.keySet());
+    }
+
+    // Ids of strings the locale didn't have before, in row order
+    public List<String> getAddedStringIds(String localeCode) {
+        LocaleChanges localeChanges = changes.get(localeCode);
+        return localeChanges == null ? Collections.emptyList() : Collections.unmodifiableList(localeChanges.added);
+    }
+
+    // Ids of strings the locale no longer has
+    public List<String> getRemovedStringIds(String localeCode) {
+        LocaleChanges localeChanges = changes.get(localeCode);
+        return localeChanges == null ? Collections.emptyList() : Collections.unmodifiableList(localeChanges.removed);
+    }
+
+    // Ids of strings whose text changed, in row order
+    public List<String> getChangedStringIds(String localeCode) {
+        LocaleChanges localeChanges = changes.get(localeCode);
+        return localeChanges == null ? Collections.emptyList() : Collections.unmodifiableList(localeChanges.changed);
+    }
+
+    /**
+     * A report of every change, a line per string under a summary line per locale:
+     *
+     * <pre>
+     * de: 1 added, 1 removed, 0 changed
+     *   + new_string
+     *   - old_string
+     * </pre>
+     */
+    @Override
+    public String toString() {
+        if (changes.isEmpty()) return "No changes";
+
+        StringBuilder report = new StringBuilder();
+        for (String localeCode : changes.keySet()) {
+            LocaleChanges localeChanges = changes.get(localeCode);
+            report.append(localeCode).append(": ")
+                    .append(localeChanges.added.size()).append(" added, ")
+                    .append(localeChanges.removed.size()).append(" removed, ")
+                    .append(localeChanges.changed.size()).append(" changed\n");
+
+            appendStringIds(report, "+", localeChanges.added);
+            appendStringIds(report, "-", localeChanges.removed);
+            appendStringIds(report, "~", localeChanges.changed);
+        }
+        return report.toString().trim();
+    }
+
+    protected void appendStringIds(StringBuilder report, String mark, List<String> stringIds) {
+        for (String stringId : stringIds) {
+            report.append("  ").append(mark).append(' ').append(stringId).append('\n');
+        }
+    }
+
+    /**
+     * Replaces the text of every locale in the table with fingerprints. The table's locales are
+     * removed as they are done, and only its string ids are kept.
+     */
+    protected static Fingerprints fingerprint(TranslationTable table) {
+        Fingerprints fingerprints = new Fingerprints(table);
+
+        for (String localeCode : new ArrayList<>(table.getLocaleCodes())) {
+            long[] columnFingerprints = new long[table.getRowCount()];
+            for (int row = 0; row < columnFingerprints.length; row++) {
+                columnFingerprints[row] = fingerprint(table.get(localeCode, row));
+            }
+
+            fingerprints.columns.put(localeCode, columnFingerprints);
+            table.removeLocale(localeCode);
+        }
+        return fingerprints;
+    }
+
+    // 64-bit FNV-1a of the text's chars. Empty cells count as missing, as they do in a conversion
+    protected static long fingerprint(String text) {
+        if (text == null || text.isEmpty()) return NO_TEXT;
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == NO_TEXT ? 1 : hash;
+    }
+
+    /**
+     * Compares the earlier version's fingerprints with the later version, in one pass over the later
+     * version's rows per locale.
+     */
+    protected static SheetDiff compare(Fingerprints before, TranslationTable after) {
+        SheetDiff diff = new SheetDiff();
+
+        Set<String> localeCodes = new TreeSet<>(before.columns.keySet());
+        localeCodes.addAll(after.getLocaleCodes());
+
+        for (String localeCode : localeCodes) {
+            long[] beforeColumn = before.columns.get(localeCode);
+            boolean isInAfter = after.hasLocale(localeCode);
+            LocaleChanges localeChanges = new LocaleChanges();
+
+            for (int row = 0; row < after.getRowCount(); row++) {
+                String stringId = after.getStringId(row);
+                long afterFingerprint = isInAfter ? fingerprint(after.get(localeCode, row)) : NO_TEXT;
+
+                int beforeRow = before.stringIds.getRow(stringId);
+                long beforeFingerprint = beforeColumn == null || beforeRow < 0 ? NO_TEXT : beforeColumn[beforeRow];
+
+                if (afterFingerprint == beforeFingerprint) continue;
+
+                if (beforeFingerprint == NO_TEXT) {
+                    localeChanges.added.add(stringId);
+                } else if (afterFingerprint == NO_TEXT) {
+                    localeChanges.removed.add(stringId);
+                } else {
+                    localeChanges.changed.add(stringId);
+                }
+            }
+
+            // Rows only in the earlier version
+            if (beforeColumn != null) {
+                for (int row = 0; row < before.stringIds.getRowCount(); row++) {
+                    String stringId = before.stringIds.getStringId(row);
+                    if (beforeColumn[row] != NO_TEXT && after.getRow(stringId) < 0) localeChanges.removed.add(stringId);
+                }
+            }
+
+            if (!localeChanges.isEmpty()) diff.changes.put(localeCode, localeChanges);
+        }
+
+        return diff;
+    }
+
+    // A version of the translations as fingerprints, see fingerprint(TranslationTable)
+    protected static class Fingerprints {
+        // Only the string ids and their rows are used
+        final TranslationTable stringIds;
+        // Locale code to the fingerprint of each row's cell
+        final HashMap<String, long[]> columns = new HashMap<>();
+
+        Fingerprints(TranslationTable stringIds) {
+            this.stringIds = stringIds;
+        }
+    }
+
+    protected static class LocaleChanges {
+        final List<String> added = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+        final List<String> changed = new ArrayList<>();
+
+        boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+        }
+    }
+
+}
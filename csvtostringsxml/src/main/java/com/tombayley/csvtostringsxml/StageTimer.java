@@ -0,0 +1,124 @@
+package com.tombayley.csvtostringsxml;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Times the stages of one conversion run and reports them to a {@link ConversionListener}. Does
+ * nothing when there is no listener.
+ *
+ * Allocations are counted only for the thread running the conversion and for the run's tasks,
+ * wrapped with {@link #wrap(Callable)} before they are handed to an executor, so other runs and
+ * other work in the JVM aren't included.
+ */
+class StageTimer {
+
+    // The run on this thread: the converting thread between start() and finish(), or a task's thread
+    protected static final ThreadLocal<StageTimer> CURRENT = new ThreadLocal<>();
+
+    protected final ConversionListener listener;
+    protected final com.sun.management.ThreadMXBean threadMXBean;
+    protected final ConversionRun run = new ConversionRun();
+
+    protected long conversionStart;
+    protected long stageStart;
+    protected long allocatedBytesAtStageStart;
+    // Allocated by the run's tasks on other threads since the stage started
+    protected final AtomicLong taskAllocatedBytes = new AtomicLong();
+
+    StageTimer(ConversionListener listener) {
+        this.listener = listener;
+        this.threadMXBean = listener == null ? null : getAllocationThreadMXBean();
+    }
+
+    protected static com.sun.management.ThreadMXBean getAllocationThreadMXBean() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) return null;
+
+        com.sun.management.ThreadMXBean allocationThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        if (!allocationThreadMXBean.isThreadAllocatedMemorySupported()
+                || !allocationThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        return allocationThreadMXBean;
+    }
+
+    void start() {
+        if (listener == null) return;
+
+        CURRENT.set(this);
+        listener.onConversionStarted(run);
+        conversionStart = System.nanoTime();
+        startStage();
+    }
+
+    void finishStage(String stage, long items) {
+        if (listener == null) return;
+
+        long duration = System.nanoTime() - stageStart;
+        long allocatedBytes = threadMXBean == null
+                ? -1
+                : getCurrentThreadAllocatedBytes() - allocatedBytesAtStageStart + taskAllocatedBytes.getAndSet(0);
+        listener.onStageFinished(run, stage, duration, items, allocatedBytes);
+        startStage();
+    }
+
+    void finish() {
+        if (listener == null) return;
+
+        CURRENT.remove();
+        listener.onConversionFinished(run, System.nanoTime() - conversionStart);
+    }
+
+    protected void startStage() {
+        allocatedBytesAtStageStart = getCurrentThreadAllocatedBytes();
+        taskAllocatedBytes.set(0);
+        stageStart = System.nanoTime();
+    }
+
+    protected long getCurrentThreadAllocatedBytes() {
+        if (threadMXBean == null) return 0;
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Makes a task of the run on this thread count toward the run when it is run on another thread.
+     * Returns the task as it is if there is no run.
+     */
+    static <T> Callable<T> wrap(Callable<T> task) {
+        StageTimer timer = CURRENT.get();
+        if (timer == null) return task;
+
+        return () -> {
+            // Run inside another of the run's tasks on this thread, which already counts it
+            if (CURRENT.get() == timer) return task.call();
+
+            StageTimer previous = CURRENT.get();
+            CURRENT.set(timer);
+            long allocatedBytesAtStart = timer.getCurrentThreadAllocatedBytes();
+            try {
+                return task.call();
+            } finally {
+                timer.taskAllocatedBytes.addAndGet(timer.getCurrentThreadAllocatedBytes() - allocatedBytesAtStart);
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    // Reports a locale of the run on this thread, if there is one
+    static void localeWritten(String localeCode, long bytes) {
+        StageTimer timer = CURRENT.get();
+        if (timer != null) timer.listener.onLocaleWritten(timer.run, localeCode, bytes);
+    }
+
+    static void localeSkipped(String localeCode) {
+        StageTimer timer = CURRENT.get();
+        if (timer != null) timer.listener.onLocaleSkipped(timer.run, localeCode);
+    }
+
+}
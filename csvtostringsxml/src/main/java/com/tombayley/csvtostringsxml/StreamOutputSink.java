@@ -0,0 +1,33 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes each strings.xml to a stream opened by a {@link StreamFactory}, e.g. an upload or an
+ * entry of an archive. Each stream is closed once its file is written.
+ */
+public class StreamOutputSink implements OutputSink {
+
+    public interface StreamFactory {
+        OutputStream open(String localeCode, String path) throws IOException;
+    }
+
+    protected final StreamFactory streamFactory;
+
+    public StreamOutputSink(StreamFactory streamFactory) {
+        this.streamFactory = streamFactory;
+    }
+
+    @Override
+    public boolean write(String localeCode, String path, byte[] bytes) throws IOException {
+        OutputStream outputStream = streamFactory.open(localeCode, path);
+        try {
+            outputStream.write(bytes);
+        } finally {
+            outputStream.close();
+        }
+        return true;
+    }
+
+}
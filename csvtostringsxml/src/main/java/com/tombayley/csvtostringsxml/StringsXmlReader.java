@@ -0,0 +1,143 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Pulls the {@code <string>} elements out of a strings.xml file without building a tree.
+ * Strings marked {@code translatable="false"} are dropped as they are read. Other elements such as
+ * {@code plurals} and {@code string-array} are skipped.
+ */
+public class StringsXmlReader {
+
+    protected static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    protected final Reader reader;
+    protected final Predicate<String> stringIdFilter;
+
+    public StringsXmlReader(Reader reader) {
+        this(reader, null);
+    }
+
+    /**
+     * @param stringIdFilter strings whose id fails it are skipped without their text being read.
+     *                       May be null
+     */
+    public StringsXmlReader(Reader reader, Predicate<String> stringIdFilter) {
+        this.reader = reader;
+        this.stringIdFilter = stringIdFilter;
+    }
+
+    protected static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // Internal DocType entities (e.g. &appname;) are expanded, as the DOM parser did
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, true);
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * @return string id to text, in file order. Text of nested markup is flattened, matching
+     * {@link org.w3c.dom.Node#getTextContent()}
+     */
+    public LinkedHashMap<String, String> readStrings() throws XMLStreamException {
+        LinkedHashMap<String, String> strings = new LinkedHashMap<>();
+        readStrings(strings::put);
+        return strings;
+    }
+
+    /**
+     * Passes each string id and text to the consumer as it is read, in file order, so the file's
+     * strings are never all held at once. Ids can repeat.
+     */
+    public void readStrings(BiConsumer<String, String> consumer) throws XMLStreamException {
+        read(consumer, true);
+    }
+
+    // Like readStrings(BiConsumer), but the text is skipped rather than read
+    public void readStringIds(Consumer<String> consumer) throws XMLStreamException {
+        read((stringId, text) -> consumer.accept(stringId), false);
+    }
+
+    protected void read(BiConsumer<String, String> consumer, boolean readText) throws XMLStreamException {
+        XMLStreamReader xmlReader = XML_INPUT_FACTORY.createXMLStreamReader(reader);
+
+        try {
+            while (xmlReader.hasNext()) {
+                if (xmlReader.next() != XMLStreamConstants.START_ELEMENT) continue;
+                if (!xmlReader.getLocalName().equals(CsvToStringsXml.STRINGS_XML_NODE_STRING)) continue;
+
+                String stringId = xmlReader.getAttributeValue(null, CsvToStringsXml.STRINGS_XML_ATTRIBUTE_NAME);
+                String translatable = xmlReader.getAttributeValue(null, CsvToStringsXml.STRINGS_XML_ATTRIBUTE_TRANSLATABLE);
+                if (stringId == null) stringId = "";
+
+                boolean isWanted = !"false".equals(translatable)
+                        && (stringIdFilter == null || stringIdFilter.test(stringId));
+
+                if (!isWanted || !readText) {
+                    skipElement(xmlReader);
+                    if (isWanted) consumer.accept(stringId, null);
+                    continue;
+                }
+
+                consumer.accept(stringId, readTextContent(xmlReader));
+            }
+        } finally {
+            xmlReader.close();
+        }
+    }
+
+    protected void skipElement(XMLStreamReader xmlReader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = xmlReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) depth++;
+            if (event == XMLStreamConstants.END_ELEMENT) depth--;
+        }
+    }
+
+    // Reads up to the end of the current element, concatenating the text of it and its descendants
+    protected String readTextContent(XMLStreamReader xmlReader) throws XMLStreamException {
+        StringBuilder text = null;
+        String singleText = "";
+        int depth = 1;
+
+        while (depth > 0) {
+            switch (xmlReader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    // Most strings are a single text event, which needs no builder
+                    if (text == null && singleText.isEmpty()) {
+                        singleText = xmlReader.getText();
+                    } else {
+                        if (text == null) text = new StringBuilder(singleText);
+                        text.append(xmlReader.getText());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return text == null ? singleText : text.toString();
+    }
+
+}
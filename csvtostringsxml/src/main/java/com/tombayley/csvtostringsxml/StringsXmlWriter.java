@@ -0,0 +1,88 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+
+/**
+ * Writes a strings.xml file element by element, producing the same bytes the DOM + Transformer
+ * output used to: 4 space indentation, text written without escaping (translations are already
+ * escaped by {@link CsvToStringsXml#escapeString(String)}) and attribute values escaped.
+ */
+public class StringsXmlWriter {
+
+    protected static final String LINE_SEPARATOR = System.lineSeparator();
+    protected static final String INDENT = "    ";
+
+    protected final Writer writer;
+    protected final CharsetEncoder encoder;
+
+    public StringsXmlWriter(Writer writer, Charset charset) {
+        this.writer = writer;
+        this.encoder = charset.newEncoder();
+    }
+
+    public void writeStartDocument(String encoding, String docTypeText) throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>\n");
+        writer.write(docTypeText);
+        writer.write("<" + CsvToStringsXml.STRINGS_XML_ROOT_NODE + ">");
+        writer.write(LINE_SEPARATOR);
+    }
+
+    public void writeString(String stringId, String stringText, boolean translatable) throws IOException {
+        writer.write(INDENT);
+        writer.write("<" + CsvToStringsXml.STRINGS_XML_NODE_STRING + " " + CsvToStringsXml.STRINGS_XML_ATTRIBUTE_NAME + "=\"");
+        writeAttributeValue(stringId);
+        writer.write('"');
+        if (!translatable) {
+            writer.write(" " + CsvToStringsXml.STRINGS_XML_ATTRIBUTE_TRANSLATABLE + "=\"false\"");
+        }
+
+        if (stringText.isEmpty()) {
+            writer.write("/>");
+        } else {
+            writer.write('>');
+            writer.write(stringText);
+            writer.write("</" + CsvToStringsXml.STRINGS_XML_NODE_STRING + ">");
+        }
+        writer.write(LINE_SEPARATOR);
+    }
+
+    public void writeEndDocument() throws IOException {
+        writer.write("</" + CsvToStringsXml.STRINGS_XML_ROOT_NODE + ">");
+        writer.write(LINE_SEPARATOR);
+        writer.flush();
+    }
+
+    protected void writeAttributeValue(String value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&': writer.write("&amp;"); break;
+                case '<': writer.write("&lt;"); break;
+                case '>': writer.write("&gt;"); break;
+                case '"': writer.write("&quot;"); break;
+                case '\t': writer.write("&#9;"); break;
+                case '\n': writer.write("&#10;"); break;
+                case '\r': writer.write("&#13;"); break;
+                default:
+                    if (c < 0x80) {
+                        writer.write(c);
+                        break;
+                    }
+
+                    // Supplementary characters are always written as references, as the Transformer did
+                    int codePoint = value.codePointAt(i);
+                    if (Character.isBmpCodePoint(codePoint) && encoder.canEncode(c)) {
+                        writer.write(c);
+                    } else {
+                        writer.write("&#" + codePoint + ";");
+                    }
+                    i += Character.charCount(codePoint) - 1;
+            }
+        }
+    }
+
+}
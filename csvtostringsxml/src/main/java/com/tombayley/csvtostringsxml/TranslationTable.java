@@ -0,0 +1,369 @@
+package com.tombayley.csvtostringsxml;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Translations of every locale, stored as columns: one array of string ids shared by all locales
+ * and one {@code String[]} column per locale, indexed by row. A null cell means the locale has
+ * no translation for that string.
+ *
+ * Rows keep the order string ids were first added in. A locale is written in row order, except
+ * that cells merged in from existing strings.xml files come after the rest, in the order they were
+ * merged, see {@link #getRowOrder(String)}. Cells of different locales can be written from different threads, as long as no rows or
+ * locales are added at the same time.
+ *
+ * String ids are found through an open addressed {@code int[]} of rows rather than a HashMap, so
+ * a row costs no Integer or map entry. A locale's finished translations can be moved off the
+ * heap with {@link #moveOffHeap(String)}, or an off-heap table keeps every locale in a
+ * {@link Utf8Column} from the start, so its text is never held as Strings. Cells are read and
+ * written with {@link #get(String, int)} and {@link #set(String, int, String)} either way.
+ */
+public class TranslationTable {
+
+    protected static final int INITIAL_CAPACITY = 64;
+
+    protected String[] stringIds = new String[INITIAL_CAPACITY];
+    protected int rowCount = 0;
+    // Row + 1 of each string id by hash, 0 for an empty slot. Never more than half full
+    protected int[] index = new int[INITIAL_CAPACITY * 2];
+
+    protected final boolean isOffHeap;
+    protected final LinkedHashSet<String> localeCodes = new LinkedHashSet<>();
+    // Locales kept as Strings
+    protected final LinkedHashMap<String, String[]> columns = new LinkedHashMap<>();
+    // Locales of an off-heap table, and locales moved off the heap, see moveOffHeap(String)
+    protected final ConcurrentHashMap<String, Utf8Column> utf8Columns = new ConcurrentHashMap<>();
+    // Rows of each locale filled from existing files, see markMerged(String, int)
+    protected final HashMap<String, MergedRows> mergedRows = new HashMap<>();
+
+    public TranslationTable() {
+        this(false);
+    }
+
+    /**
+     * @param isOffHeap whether locales are added as {@link Utf8Column}s rather than String columns
+     */
+    public TranslationTable(boolean isOffHeap) {
+        this.isOffHeap = isOffHeap;
+    }
+
+    public boolean isOffHeap() {
+        return isOffHeap;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    // Rows that fit before the columns are reallocated, see getColumn(String)
+    public int getCapacity() {
+        return stringIds.length;
+    }
+
+    public String getStringId(int row) {
+        return stringIds[row];
+    }
+
+    // The row of a string id, or -1
+    public int getRow(String stringId) {
+        return index[findSlot(stringId)] - 1;
+    }
+
+    // The row of a string id, adding one at the end if it isn't in the table yet
+    public int addStringId(String stringId) {
+        int slot = findSlot(stringId);
+        if (index[slot] != 0) return index[slot] - 1;
+
+        if (rowCount == stringIds.length) {
+            grow();
+            slot = findSlot(stringId);
+        }
+
+        stringIds[rowCount] = stringId;
+        index[slot] = rowCount + 1;
+        return rowCount++;
+    }
+
+    // The string id's slot in the index, or the empty slot it would go in
+    protected int findSlot(String stringId) {
+        int mask = index.length - 1;
+        int hash = stringId.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        while (index[slot] != 0 && !stringIds[index[slot] - 1].equals(stringId)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    public Set<String> getLocaleCodes() {
+        return localeCodes;
+    }
+
+    public boolean hasLocale(String localeCode) {
+        return localeCodes.contains(localeCode);
+    }
+
+    public void addLocale(String localeCode) {
+        if (!localeCodes.add(localeCode)) return;
+        if (isOffHeap) {
+            utf8Columns.put(localeCode, new Utf8Column());
+        } else {
+            columns.put(localeCode, new String[stringIds.length]);
+        }
+        mergedRows.put(localeCode, new MergedRows());
+    }
+
+    public void removeLocale(String localeCode) {
+        localeCodes.remove(localeCode);
+        columns.remove(localeCode);
+        utf8Columns.remove(localeCode);
+        mergedRows.remove(localeCode);
+    }
+
+    /**
+     * The locale's cells, indexed by row, or null if the locale isn't in the table or the table is
+     * off the heap. The array is live until rows are added, and may be longer than
+     * {@link #getRowCount()}. Once the locale is moved off the heap, its cells are all null.
+     */
+    public String[] getColumn(String localeCode) {
+        return columns.get(localeCode);
+    }
+
+    // Drops the locale's translations but keeps the locale, e.g. once they have been written
+    public void clearLocale(String localeCode) {
+        String[] column = columns.get(localeCode);
+        if (column != null) Arrays.fill(column, null);
+        if (isOffHeap && utf8Columns.containsKey(localeCode)) {
+            utf8Columns.put(localeCode, new Utf8Column());
+        } else {
+            utf8Columns.remove(localeCode);
+        }
+        if (mergedRows.containsKey(localeCode)) mergedRows.put(localeCode, new MergedRows());
+    }
+
+    /**
+     * Encodes the locale's translations to UTF-8 outside the heap and clears its String cells. The
+     * locale is then read with {@link #getUtf8Column(String)} and no longer changes. Locales can be
+     * moved from different threads, as long as no rows or locales are added at the same time.
+     */
+    public void moveOffHeap(String localeCode) {
+        String[] column = columns.get(localeCode);
+        if (column == null) return;
+
+        utf8Columns.put(localeCode, Utf8Column.encode(column, rowCount));
+        Arrays.fill(column, null);
+    }
+
+    // The locale's translations if it is off the heap, otherwise null
+    public Utf8Column getUtf8Column(String localeCode) {
+        return utf8Columns.get(localeCode);
+    }
+
+    // Decoded again if the locale is off the heap
+    public String get(String localeCode, int row) {
+        Utf8Column utf8Column = utf8Columns.get(localeCode);
+        return utf8Column != null ? utf8Column.getString(row) : columns.get(localeCode)[row];
+    }
+
+    public void set(String localeCode, int row, String text) {
+        Utf8Column utf8Column = utf8Columns.get(localeCode);
+        if (utf8Column != null) {
+            utf8Column.set(row, text);
+        } else {
+            columns.get(localeCode)[row] = text;
+        }
+    }
+
+    public void put(String localeCode, String stringId, String text) {
+        addLocale(localeCode);
+        set(localeCode, addStringId(stringId), text);
+    }
+
+    // Rewrites cells, see transform(String, CellTransform)
+    public interface CellTransform {
+        // The row's new text, or null for none. text is null if the locale has none for the row
+        String apply(int row, String text);
+    }
+
+    /**
+     * Replaces every cell of the locale with what the transform returns. String cells are replaced
+     * in place, while a locale off the heap is written into a new Utf8Column, so only the cell being
+     * transformed is ever a String. Locales can be transformed from different threads, as long as
+     * no rows or locales are added at the same time.
+     */
+    public void transform(String localeCode, CellTransform transform) {
+        Utf8Column utf8Column = utf8Columns.get(localeCode);
+        if (utf8Column == null) {
+            String[] column = columns.get(localeCode);
+            for (int row = 0; row < rowCount; row++) {
+                column[row] = transform.apply(row, column[row]);
+            }
+            return;
+        }
+
+        Utf8Column transformed = new Utf8Column();
+        for (int row = 0; row < rowCount; row++) {
+            String text = transform.apply(row, utf8Column.getString(row));
+            if (text != null) transformed.set(row, text);
+        }
+        utf8Columns.put(localeCode, transformed);
+    }
+
+    // Number of strings the locale has a translation for
+    public int count(String localeCode) {
+        Utf8Column utf8Column = utf8Columns.get(localeCode);
+        if (utf8Column != null) return utf8Column.count();
+
+        String[] column = columns.get(localeCode);
+        if (column == null) return 0;
+
+        int count = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (column[row] != null) count++;
+        }
+        return count;
+    }
+
+    public long count() {
+        long count = 0;
+        for (String localeCode : localeCodes) {
+            count += count(localeCode);
+        }
+        return count;
+    }
+
+    // Clears empty cells so they count as missing
+    public void removeEmpty() {
+        for (String[] column : columns.values()) {
+            for (int row = 0; row < rowCount; row++) {
+                if (column[row] != null && column[row].isEmpty()) column[row] = null;
+            }
+        }
+        for (Utf8Column utf8Column : utf8Columns.values()) {
+            utf8Column.removeEmpty();
+        }
+    }
+
+    /**
+     * Adds the strings the locale has no translation for yet. Strings not in the table are added as
+     * new rows, in the order given.
+     */
+    public void putAllIfAbsent(String localeCode, Map<String, String> strings) {
+        addLocale(localeCode);
+        for (Map.Entry<String, String> string : strings.entrySet()) {
+            int row = addStringId(string.getKey());
+            if (hasText(localeCode, row)) continue;
+
+            set(localeCode, row, string.getValue());
+            markMerged(localeCode, row);
+        }
+    }
+
+    /**
+     * Marks a cell of the locale as filled from an existing strings.xml file, so it is written after
+     * the strings from the sheet, as the existing strings were appended to a locale before. Only the
+     * first mark of a row counts. Locales can be marked from different threads, as long as no rows or
+     * locales are added at the same time.
+     */
+    public void markMerged(String localeCode, int row) {
+        mergedRows.get(localeCode).add(row);
+    }
+
+    /**
+     * The rows the locale has a translation for, in the order they are written: rows from the sheet
+     * in row order, then the rows merged in from existing files in the order they were merged.
+     */
+    public int[] getRowOrder(String localeCode) {
+        MergedRows merged = mergedRows.get(localeCode);
+        if (merged == null) return new int[0];
+
+        int[] rows = new int[rowCount];
+        int count = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (!merged.rows.get(row) && hasText(localeCode, row)) rows[count++] = row;
+        }
+        for (int i = 0; i < merged.count; i++) {
+            if (hasText(localeCode, merged.order[i])) rows[count++] = merged.order[i];
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    public boolean hasText(String localeCode, int row) {
+        Utf8Column utf8Column = utf8Columns.get(localeCode);
+        return utf8Column != null ? utf8Column.has(row) : columns.get(localeCode)[row] != null;
+    }
+
+    // The locale's translations in the order they are written, or an empty map if the locale isn't in the table
+    public LinkedHashMap<String, String> toMap(String localeCode) {
+        LinkedHashMap<String, String> strings = new LinkedHashMap<>();
+        Utf8Column utf8Column = utf8Columns.get(localeCode);
+        String[] column = columns.get(localeCode);
+
+        for (int row : getRowOrder(localeCode)) {
+            strings.put(stringIds[row], utf8Column != null ? utf8Column.getString(row) : column[row]);
+        }
+        return strings;
+    }
+
+    public TranslationTable copy() {
+        TranslationTable copy = new TranslationTable(isOffHeap);
+        copy.localeCodes.addAll(localeCodes);
+        copy.stringIds = Arrays.copyOf(stringIds, stringIds.length);
+        copy.rowCount = rowCount;
+        copy.index = Arrays.copyOf(index, index.length);
+        for (Map.Entry<String, String[]> column : columns.entrySet()) {
+            copy.columns.put(column.getKey(), Arrays.copyOf(column.getValue(), column.getValue().length));
+        }
+        for (Map.Entry<String, Utf8Column> utf8Column : utf8Columns.entrySet()) {
+            copy.utf8Columns.put(utf8Column.getKey(), utf8Column.getValue().copy());
+        }
+        for (Map.Entry<String, MergedRows> merged : mergedRows.entrySet()) {
+            copy.mergedRows.put(merged.getKey(), merged.getValue().copy());
+        }
+        return copy;
+    }
+
+    protected void grow() {
+        int capacity = stringIds.length * 2;
+        stringIds = Arrays.copyOf(stringIds, capacity);
+        for (Map.Entry<String, String[]> column : columns.entrySet()) {
+            column.setValue(Arrays.copyOf(column.getValue(), capacity));
+        }
+
+        index = new int[capacity * 2];
+        for (int row = 0; row < rowCount; row++) {
+            index[findSlot(stringIds[row])] = row + 1;
+        }
+    }
+
+    // Rows of a locale filled from existing files, as a set and in the order they were filled
+    protected static class MergedRows {
+        final BitSet rows = new BitSet();
+        int[] order = new int[16];
+        int count = 0;
+
+        void add(int row) {
+            if (rows.get(row)) return;
+            rows.set(row);
+            if (count == order.length) order = Arrays.copyOf(order, count * 2);
+            order[count++] = row;
+        }
+
+        MergedRows copy() {
+            MergedRows copy = new MergedRows();
+            copy.rows.or(rows);
+            copy.order = Arrays.copyOf(order, order.length);
+            copy.count = count;
+            return copy;
+        }
+    }
+
+}
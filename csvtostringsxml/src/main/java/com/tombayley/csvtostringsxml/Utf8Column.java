@@ -0,0 +1,259 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A locale's strings as UTF-8 bytes in direct ByteBuffers, outside the Java heap, so large tables
+ * don't fill the heap with Strings waiting to be written. Strings are found by row through a
+ * {@code long[]} of addresses, each the chunk index and the offset of a length prefixed string.
+ *
+ * Built at once by {@link #encode(String[], int)}, or a string at a time by
+ * {@link #set(int, String)} as a table is read. It is filled by one thread at a time, and once
+ * filled can be read from any number of threads.
+ */
+public class Utf8Column {
+
+    // Largest chunk allocated, unless a single string is longer
+    protected static final int CHUNK_SIZE = 1024 * 1024;
+    // First chunk of a column filled a string at a time, doubling up to CHUNK_SIZE
+    protected static final int MIN_CHUNK_SIZE = 4 * 1024;
+    protected static final long NO_STRING = -1;
+    // Bytes of the length written before each string
+    protected static final int LENGTH_SIZE = 4;
+
+    protected final List<ByteBuffer> chunks = new ArrayList<>();
+    // Index of the chunk strings are added to, while strings longer than a chunk get one of their own
+    protected int fillChunk = -1;
+    // Grows as rows are set, rows past the end have no string
+    protected long[] addresses;
+    protected int count = 0;
+    // For set(int, String), created on first use
+    protected CharsetEncoder encoder = null;
+
+    public Utf8Column() {
+        this(0);
+    }
+
+    protected Utf8Column(int rowCount) {
+        addresses = new long[rowCount];
+        Arrays.fill(addresses, NO_STRING);
+    }
+
+    /**
+     * Encodes the strings of a column, without building a byte[] per string. Unpaired surrogates
+     * become '?', as in {@link String#getBytes(java.nio.charset.Charset)}.
+     *
+     * The column is measured first, so chunks are no larger than the bytes left to add and a small
+     * column takes only the bytes it needs.
+     */
+    public static Utf8Column encode(String[] column, int rowCount) {
+        Utf8Column utf8Column = new Utf8Column(rowCount);
+        CharsetEncoder encoder = newEncoder();
+
+        // Bytes of the strings that share chunks
+        long remainingBytes = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (column[row] == null) continue;
+
+            int bytes = LENGTH_SIZE + getUtf8Length(column[row]);
+            if (bytes <= CHUNK_SIZE) remainingBytes += bytes;
+        }
+
+        for (int row = 0; row < rowCount; row++) {
+            if (column[row] == null) continue;
+
+            int bytes = LENGTH_SIZE + getUtf8Length(column[row]);
+            utf8Column.add(row, column[row], bytes, remainingBytes, encoder);
+            if (bytes <= CHUNK_SIZE) remainingBytes -= bytes;
+        }
+        return utf8Column;
+    }
+
+    protected static CharsetEncoder newEncoder() {
+        return StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Sets the row's string, or removes it if text is null. Chunks are allocated as strings are
+     * added, each twice the size of the last up to {@link #CHUNK_SIZE}. The bytes of a replaced
+     * string stay allocated until the column is dropped.
+     */
+    public void set(int row, String text) {
+        remove(row);
+        if (text == null) return;
+
+        if (row >= addresses.length) {
+            int oldLength = addresses.length;
+            addresses = Arrays.copyOf(addresses, Math.max(row + 1, oldLength * 2));
+            Arrays.fill(addresses, oldLength, addresses.length, NO_STRING);
+        }
+        if (encoder == null) encoder = newEncoder();
+
+        int bytes = LENGTH_SIZE + getUtf8Length(text);
+        int nextChunkSize = fillChunk < 0 ? MIN_CHUNK_SIZE : Math.min(CHUNK_SIZE, chunks.get(fillChunk).capacity() * 2);
+        add(row, text, bytes, Math.max(bytes, nextChunkSize), encoder);
+    }
+
+    public void remove(int row) {
+        if (!has(row)) return;
+        addresses[row] = NO_STRING;
+        count--;
+    }
+
+    // Removes empty strings, so they count as missing
+    public void removeEmpty() {
+        for (int row = 0; row < addresses.length; row++) {
+            if (has(row) && getLength(row) == 0) remove(row);
+        }
+    }
+
+    /**
+     * A column with the same strings that can be changed without changing this one. The chunks
+     * already filled are shared, so neither column adds to them after this.
+     */
+    public Utf8Column copy() {
+        Utf8Column copy = new Utf8Column(0);
+        copy.addresses = Arrays.copyOf(addresses, addresses.length);
+        copy.count = count;
+        copy.chunks.addAll(chunks);
+        fillChunk = -1;
+        return copy;
+    }
+
+    // Bytes of the text in UTF-8, with an unpaired surrogate as the one byte of '?'
+    protected static int getUtf8Length(String text) {
+        int length = text.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @param bytes          the string's length prefix and UTF-8 bytes
+     * @param remainingBytes bytes of this and every later string of the column that shares chunks
+     */
+    protected void add(int row, String text, int bytes, long remainingBytes, CharsetEncoder encoder) {
+        int chunkIndex;
+        if (bytes > CHUNK_SIZE) {
+            chunkIndex = chunks.size();
+            chunks.add(ByteBuffer.allocateDirect(bytes));
+        } else {
+            if (fillChunk < 0 || chunks.get(fillChunk).remaining() < bytes) {
+                fillChunk = chunks.size();
+                chunks.add(ByteBuffer.allocateDirect((int) Math.min(remainingBytes, CHUNK_SIZE)));
+            }
+            chunkIndex = fillChunk;
+        }
+        ByteBuffer chunk = chunks.get(chunkIndex);
+
+        int start = chunk.position();
+        chunk.position(start + LENGTH_SIZE);
+
+        encoder.reset();
+        CharBuffer chars = CharBuffer.wrap(text);
+        CoderResult result = encoder.encode(chars, chunk, true);
+        if (result.isOverflow()) throw new IllegalStateException("UTF-8 longer than measured");
+        encoder.flush(chunk);
+
+        chunk.putInt(start, chunk.position() - start - LENGTH_SIZE);
+        addresses[row] = ((long) chunkIndex << 32) | start;
+        count++;
+    }
+
+    // Bytes allocated for the column's chunks
+    public long getCapacity() {
+        long capacity = 0;
+        for (ByteBuffer chunk : chunks) {
+            capacity += chunk.capacity();
+        }
+        return capacity;
+    }
+
+    public int getRowCount() {
+        return addresses.length;
+    }
+
+    public boolean has(int row) {
+        return row < addresses.length && addresses[row] != NO_STRING;
+    }
+
+    // Number of rows with a string
+    public int count() {
+        return count;
+    }
+
+    // Length in bytes of the row's string
+    public int getLength(int row) {
+        long address = addresses[row];
+        return chunks.get((int) (address >>> 32)).getInt((int) address);
+    }
+
+    /**
+     * Copies the row's bytes to the stream through the scratch buffer, without decoding them.
+     *
+     * @return the scratch buffer, replaced by a larger one if it was too small
+     */
+    public byte[] writeTo(int row, OutputStream out, byte[] scratch) throws IOException {
+        ByteBuffer bytes = getBytes(row);
+        int length = bytes.remaining();
+        if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+
+        bytes.get(scratch, 0, length);
+        out.write(scratch, 0, length);
+        return scratch;
+    }
+
+    // Adds the row's string as CsvToStringsXml.updateDigest(MessageDigest, String) would
+    public void updateDigest(int row, MessageDigest digest) {
+        ByteBuffer bytes = getBytes(row);
+        digest.update(ByteBuffer.allocate(LENGTH_SIZE).putInt(bytes.remaining()).array());
+        digest.update(bytes);
+    }
+
+    // The row's bytes, as a view with its own position so threads don't affect each other
+    protected ByteBuffer getBytes(int row) {
+        long address = addresses[row];
+        ByteBuffer chunk = chunks.get((int) (address >>> 32));
+        int start = (int) address;
+        int length = chunk.getInt(start);
+
+        ByteBuffer bytes = chunk.duplicate();
+        bytes.limit(start + LENGTH_SIZE + length);
+        bytes.position(start + LENGTH_SIZE);
+        return bytes;
+    }
+
+    // The row's string, decoded again. Only for callers that need the text itself
+    public String getString(int row) {
+        if (!has(row)) return null;
+        return StandardCharsets.UTF_8.decode(getBytes(row)).toString();
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a UTF-8 strings.xml straight to bytes, with the texts copied from a {@link Utf8Column}
+ * without decoding them. Gives the same bytes as {@link StringsXmlWriter} with UTF-8.
+ */
+public class Utf8StringsXmlWriter {
+
+    protected static final byte[] INDENT = ascii(StringsXmlWriter.INDENT);
+    protected static final byte[] LINE_SEPARATOR = ascii(StringsXmlWriter.LINE_SEPARATOR);
+    protected static final byte[] STRING_START = ascii("<" + CsvToStringsXml.STRINGS_XML_NODE_STRING
+            + " " + CsvToStringsXml.STRINGS_XML_ATTRIBUTE_NAME + "=\"");
+    protected static final byte[] NOT_TRANSLATABLE = ascii(
+            "\" " + CsvToStringsXml.STRINGS_XML_ATTRIBUTE_TRANSLATABLE + "=\"false\"");
+    protected static final byte[] STRING_END = ascii("</" + CsvToStringsXml.STRINGS_XML_NODE_STRING + ">");
+    protected static final byte[] EMPTY_STRING_END = ascii("/>");
+
+    protected final OutputStream out;
+    protected byte[] scratch = new byte[256];
+
+    public Utf8StringsXmlWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    // The encoding is only written in the declaration, so any name of UTF-8 can be given
+    public void writeStartDocument(String encoding, String docTypeText) throws IOException {
+        out.write(("<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>\n" + docTypeText
+                + "<" + CsvToStringsXml.STRINGS_XML_ROOT_NODE + ">").getBytes(StandardCharsets.UTF_8));
+        out.write(LINE_SEPARATOR);
+    }
+
+    public void writeString(String stringId, Utf8Column column, int row, boolean translatable) throws IOException {
+        out.write(INDENT);
+        out.write(STRING_START);
+        writeAttributeValue(stringId);
+        if (translatable) {
+            out.write('"');
+        } else {
+            out.write(NOT_TRANSLATABLE);
+        }
+
+        if (column.getLength(row) == 0) {
+            out.write(EMPTY_STRING_END);
+        } else {
+            out.write('>');
+            scratch = column.writeTo(row, out, scratch);
+            out.write(STRING_END);
+        }
+        out.write(LINE_SEPARATOR);
+    }
+
+    public void writeEndDocument() throws IOException {
+        out.write(ascii("</" + CsvToStringsXml.STRINGS_XML_ROOT_NODE + ">"));
+        out.write(LINE_SEPARATOR);
+        out.flush();
+    }
+
+    // Escapes as StringsXmlWriter.writeAttributeValue(String) does, encoding to UTF-8 by hand
+    protected void writeAttributeValue(String value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&': out.write(ascii("&amp;")); break;
+                case '<': out.write(ascii("&lt;")); break;
+                case '>': out.write(ascii("&gt;")); break;
+                case '"': out.write(ascii("&quot;")); break;
+                case '\t': out.write(ascii("&#9;")); break;
+                case '\n': out.write(ascii("&#10;")); break;
+                case '\r': out.write(ascii("&#13;")); break;
+                default:
+                    if (c < 0x80) {
+                        out.write(c);
+                        break;
+                    }
+
+                    // UTF-8 can encode every BMP char but unpaired surrogates
+                    int codePoint = value.codePointAt(i);
+                    if (Character.isBmpCodePoint(codePoint) && !Character.isSurrogate(c)) {
+                        writeUtf8(c);
+                    } else {
+                        out.write(ascii("&#" + codePoint + ";"));
+                    }
+                    i += Character.charCount(codePoint) - 1;
+            }
+        }
+    }
+
+    protected void writeUtf8(char c) throws IOException {
+        if (c < 0x800) {
+            out.write(0xC0 | (c >> 6));
+        } else {
+            out.write(0xE0 | (c >> 12));
+            out.write(0x80 | ((c >> 6) & 0x3F));
+        }
+        out.write(0x80 | (c & 0x3F));
+    }
+
+    protected static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.tombayley.csvtostringsxml;
+
+/**
+ * A problem a {@link ValidationRule} found in a string.
+ */
+public class ValidationIssue {
+
+    public enum Severity {
+        // Worth fixing, but the app still builds and runs
+        WARNING,
+        // Breaks the Android build or the app at runtime, and stops the run under fail-fast
+        ERROR
+    }
+
+    protected final Severity severity;
+    protected final String localeCode;
+    protected final String stringId;
+    protected final String message;
+
+    public ValidationIssue(Severity severity, String localeCode, String stringId, String message) {
+        this.severity = severity;
+        this.localeCode = localeCode;
+        this.stringId = stringId;
+        this.message = message;
+    }
+
+    public Severity getSeverity() {
+        return severity;
+    }
+
+    public String getLocaleCode() {
+        return localeCode;
+    }
+
+    public String getStringId() {
+        return stringId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return severity + " " + localeCode + "/" + stringId + ": " + message;
+    }
+
+}
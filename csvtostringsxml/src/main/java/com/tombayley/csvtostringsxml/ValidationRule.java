@@ -0,0 +1,21 @@
+package com.tombayley.csvtostringsxml;
+
+/**
+ * Checks one string of one locale. Rules run while translations are fixed, once per string, from
+ * the executor's threads when one is set, so implementations must be thread-safe.
+ *
+ * @see ValidationRules
+ */
+public interface ValidationRule {
+
+    /**
+     * @param text        the string as read from the sheet or an existing file, or null if the locale
+     *                    has no translation for it
+     * @param fixedText   the string as it will be written, or null if the locale has no translation for it
+     * @param defaultText the default locale's text for the string as read, or null. Always null when
+     *                    checking the default locale itself
+     * @return the problem found, or null
+     */
+    ValidationIssue validate(String localeCode, String stringId, String text, String fixedText, String defaultText);
+
+}
@@ -0,0 +1,177 @@
+package com.tombayley.csvtostringsxml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The built in {@link ValidationRule}s, turned on with
+ * {@link CsvToStringsXml.CsvToStringsXmlBuilder#setValidation(boolean)}.
+ */
+public class ValidationRules {
+
+    // Flags don't include ' ', so text such as "50% off" isn't taken for a placeholder
+    protected static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("%(?:(\\d+)\\$)?[-#+0,(]*\\d*(?:\\.\\d+)?([a-zA-Z%])");
+
+    protected ValidationRules() {
+    }
+
+    public static List<ValidationRule> defaults() {
+        return Arrays.asList(missingTranslation(), placeholders(), markup());
+    }
+
+    /**
+     * Warns about strings the default locale has but a translation doesn't, as Android shows the
+     * default text for them.
+     */
+    public static ValidationRule missingTranslation() {
+        return (localeCode, stringId, text, fixedText, defaultText) -> {
+            if (text != null || defaultText == null) return null;
+            return new ValidationIssue(ValidationIssue.Severity.WARNING, localeCode, stringId, "missing, the default text is used");
+        };
+    }
+
+    /**
+     * Errors on translations whose format placeholders, such as %1$s or %d, differ from the default
+     * text's, which makes String.format fail or show the wrong values at runtime.
+     */
+    public static ValidationRule placeholders() {
+        return (localeCode, stringId, text, fixedText, defaultText) -> {
+            if (text == null || defaultText == null) return null;
+            // Most strings have no placeholders, and are checked without allocating
+            if (text.indexOf('%') < 0 && defaultText.indexOf('%') < 0) return null;
+
+            List<String> placeholders = getPlaceholders(text);
+            List<String> defaultPlaceholders = getPlaceholders(defaultText);
+            if (placeholders.equals(defaultPlaceholders)) return null;
+
+            return new ValidationIssue(ValidationIssue.Severity.ERROR, localeCode, stringId,
+                    "placeholders " + placeholders + " don't match the default text's " + defaultPlaceholders);
+        };
+    }
+
+    /**
+     * Errors on strings that wouldn't be well formed XML once written: tags that aren't closed or
+     * closed in the wrong order, and a {@code <} or {@code &} that doesn't start a tag or reference.
+     */
+    public static ValidationRule markup() {
+        return (localeCode, stringId, text, fixedText, defaultText) -> {
+            if (fixedText == null) return null;
+            if (fixedText.indexOf('<') < 0 && fixedText.indexOf('&') < 0) return null;
+
+            String problem = findMarkupProblem(fixedText);
+            if (problem == null) return null;
+            return new ValidationIssue(ValidationIssue.Severity.ERROR, localeCode, stringId, problem);
+        };
+    }
+
+    // Placeholders of a string, sorted, as e.g. "1$s" or "d". Literal % and line separators aren't placeholders
+    protected static List<String> getPlaceholders(String text) {
+        if (text.indexOf('%') < 0) return Collections.emptyList();
+
+        List<String> placeholders = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER_PATTERN.matcher(text);
+        while (matcher.find()) {
+            String conversion = matcher.group(2);
+            if (conversion.equals("%") || conversion.equals("n")) continue;
+
+            String index = matcher.group(1);
+            placeholders.add(index == null ? conversion : index + "$" + conversion);
+        }
+
+        Collections.sort(placeholders);
+        return placeholders;
+    }
+
+    // The first problem with the markup of a string, or null if it is well formed
+    protected static String findMarkupProblem(String text) {
+        List<String> openTags = new ArrayList<>();
+        int length = text.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+
+            if (c == '&') {
+                int end = text.indexOf(';', i);
+                if (end < 0 || !isReference(text, i + 1, end)) return "unescaped & at " + i;
+                i = end;
+                continue;
+            }
+
+            if (c != '<') continue;
+
+            if (text.startsWith("<!--", i)) {
+                int end = text.indexOf("-->", i + 4);
+                if (end < 0) return "comment not closed";
+                i = end + 2;
+                continue;
+            }
+
+            int end = text.indexOf('>', i);
+            if (end < 0) return "unescaped < at " + i;
+            String tag = text.substring(i + 1, end);
+            i = end;
+
+            if (tag.startsWith("/")) {
+                String name = tag.substring(1).trim();
+                if (openTags.isEmpty()) return "</" + name + "> has no opening tag";
+
+                String openName = openTags.remove(openTags.size() - 1);
+                if (!openName.equals(name)) return "<" + openName + "> is closed by </" + name + ">";
+                continue;
+            }
+
+            String name = getTagName(tag);
+            if (name.isEmpty()) return "unescaped < at " + (i - tag.length() - 1);
+            if (!tag.endsWith("/")) openTags.add(name);
+        }
+
+        if (!openTags.isEmpty()) return "<" + openTags.get(openTags.size() - 1) + "> not closed";
+        return null;
+    }
+
+    // Whether text[start, end) is the name of an entity or a character reference, such as "amp" or "#8230"
+    protected static boolean isReference(String text, int start, int end) {
+        if (start == end) return false;
+
+        if (text.charAt(start) == '#') {
+            boolean isHex = end - start > 1 && (text.charAt(start + 1) == 'x' || text.charAt(start + 1) == 'X');
+            int digitsStart = start + (isHex ? 2 : 1);
+            if (digitsStart == end) return false;
+
+            for (int i = digitsStart; i < end; i++) {
+                if (Character.digit(text.charAt(i), isHex ? 16 : 10) < 0) return false;
+            }
+            return true;
+        }
+
+        if (!isNameStart(text.charAt(start))) return false;
+        for (int i = start + 1; i < end; i++) {
+            if (!isNamePart(text.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    // Name of the tag in "<name attr=..>", or "" if it doesn't start with a valid name
+    protected static String getTagName(String tag) {
+        if (tag.isEmpty() || !isNameStart(tag.charAt(0))) return "";
+
+        int end = 1;
+        while (end < tag.length() && isNamePart(tag.charAt(end))) {
+            end++;
+        }
+        return tag.substring(0, end);
+    }
+
+    protected static boolean isNameStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == ':';
+    }
+
+    protected static boolean isNamePart(char c) {
+        return isNameStart(c) || Character.isDigit(c) || c == '-' || c == '.';
+    }
+
+}
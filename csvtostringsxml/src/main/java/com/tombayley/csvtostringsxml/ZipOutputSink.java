@@ -0,0 +1,298 @@
+package com.tombayley.csvtostringsxml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Writes every strings.xml into one zip archive, e.g. a resource bundle, instead of a directory of
+ * small files.
+ *
+ * Each file is compressed as it is written, so with an executor set on the converter the locales
+ * are compressed in parallel. The archive itself is written by {@link #finish()}, with entries
+ * sorted by path and fixed timestamps, so the same strings always give the same bytes.
+ *
+ * ZipOutputStream can only compress entries itself, one after another, so the zip format is
+ * written here directly. Zip64 isn't needed for strings files and isn't supported.
+ *
+ * When writing to a file, {@link #write(String, String, byte[])} compares each file with its entry
+ * in the archive already there, to report whether it changed.
+ */
+public class ZipOutputSink implements OutputSink {
+
+    protected static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    protected static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    protected static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+    protected static final int VERSION_NEEDED = 20;
+    // Entry names are UTF-8
+    protected static final int FLAG_UTF8 = 0x0800;
+    protected static final int METHOD_STORED = 0;
+    protected static final int METHOD_DEFLATED = 8;
+    // 1980-01-01 00:00, the earliest DOS date, so archives don't depend on when they were made
+    protected static final int DOS_TIME = 0;
+    protected static final int DOS_DATE = (1 << 5) | 1;
+
+    protected static final long MAX_SIZE = 0xFFFFFFFFL;
+    protected static final int MAX_ENTRIES = 0xFFFF;
+
+    protected final OutputStream outputStream;
+    protected final Path file;
+    protected final AtomicFileWriter fileWriter;
+    protected final int compressionLevel;
+
+    protected String entryPrefix = "";
+
+    // Entry name to compressed entry, sorted so the archive doesn't depend on the order locales finish in
+    protected final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    // Entry name to contents of the archive already at the file, read on the first write
+    protected Map<String, byte[]> previousEntries;
+
+    /**
+     * Writes the archive to a stream, which is left open.
+     *
+     * @param compressionLevel 0-9 as in {@link Deflater}, or {@link Deflater#DEFAULT_COMPRESSION}.
+     *                         With 0 the files are stored uncompressed.
+     */
+    public ZipOutputSink(OutputStream outputStream, int compressionLevel) {
+        this.outputStream = outputStream;
+        this.file = null;
+        this.fileWriter = null;
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Writes the archive to a file, which is replaced atomically and left alone if it already holds
+     * the same archive.
+     *
+     * @see #ZipOutputSink(OutputStream, int)
+     */
+    public ZipOutputSink(Path file, int compressionLevel, CsvToStringsXml.FsyncPolicy fsyncPolicy) {
+        this.outputStream = null;
+        this.file = file;
+        this.fileWriter = new AtomicFileWriter(fsyncPolicy);
+        this.compressionLevel = compressionLevel;
+    }
+
+    // Put in front of every entry name, e.g. "res/" for the layout of an AAR
+    public ZipOutputSink setEntryPrefix(String entryPrefix) {
+        this.entryPrefix = entryPrefix;
+        return this;
+    }
+
+    /**
+     * @return false if the file's archive already has the same entry. Always true when writing to a
+     * stream, as there is nothing to compare with
+     */
+    @Override
+    public boolean write(String localeCode, String path, byte[] bytes) throws IOException {
+        String name = entryPrefix + path;
+        entries.put(name, compress(name, bytes));
+
+        return !Arrays.equals(getPreviousEntries().get(name), bytes);
+    }
+
+    protected synchronized Map<String, byte[]> getPreviousEntries() throws IOException {
+        if (previousEntries != null) return previousEntries;
+
+        previousEntries = new HashMap<>();
+        if (file == null || !Files.isRegularFile(file)) return previousEntries;
+
+        ZipFile zipFile;
+        try {
+            zipFile = new ZipFile(file.toFile(), StandardCharsets.UTF_8);
+        } catch (ZipException e) {
+            // Not an archive we can read, so every file counts as changed
+            return previousEntries;
+        }
+
+        try {
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                previousEntries.put(zipEntry.getName(), readFully(zipFile.getInputStream(zipEntry)));
+            }
+        } finally {
+            zipFile.close();
+        }
+        return previousEntries;
+    }
+
+    protected static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8 * 1024];
+            int length;
+            while ((length = in.read(chunk)) != -1) {
+                bytes.write(chunk, 0, length);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (file == null) {
+            writeArchive(outputStream);
+            return;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        writeArchive(buffer);
+        fileWriter.write(file, buffer.toByteArray());
+        fileWriter.finish();
+    }
+
+    protected Entry compress(String name, byte[] bytes) {
+        Entry entry = new Entry();
+        entry.name = name.getBytes(StandardCharsets.UTF_8);
+        entry.size = bytes.length;
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        entry.crc = crc.getValue();
+
+        if (compressionLevel == Deflater.NO_COMPRESSION) {
+            entry.method = METHOD_STORED;
+            entry.data = bytes;
+            return entry;
+        }
+
+        // Raw deflate data, as zip entries have no zlib header
+        Deflater deflater = new Deflater(compressionLevel, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+            byte[] chunk = new byte[8 * 1024];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(chunk);
+                compressed.write(chunk, 0, length);
+            }
+
+            entry.method = METHOD_DEFLATED;
+            entry.data = compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+        return entry;
+    }
+
+    protected void writeArchive(OutputStream out) throws IOException {
+        if (entries.size() > MAX_ENTRIES) throw new IOException("Too many files for a zip without Zip64: " + entries.size());
+
+        List<Entry> written = new ArrayList<>(entries.size());
+        long offset = 0;
+
+        for (Map.Entry<String, Entry> namedEntry : entries.entrySet()) {
+            Entry entry = namedEntry.getValue();
+            if (entry.size > MAX_SIZE || offset > MAX_SIZE) {
+                throw new IOException("Too large for a zip without Zip64: " + namedEntry.getKey());
+            }
+            entry.offset = offset;
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream(30 + entry.name.length);
+            writeInt(header, LOCAL_FILE_HEADER_SIGNATURE);
+            writeShort(header, VERSION_NEEDED);
+            writeEntryFields(header, entry);
+            writeShort(header, entry.name.length);
+            // Extra field length
+            writeShort(header, 0);
+            header.write(entry.name);
+
+            header.writeTo(out);
+            out.write(entry.data);
+
+            offset += header.size() + entry.data.length;
+            written.add(entry);
+        }
+
+        long centralDirectoryOffset = offset;
+        ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+
+        for (Entry entry : written) {
+            writeInt(centralDirectory, CENTRAL_DIRECTORY_SIGNATURE);
+            // Version made by
+            writeShort(centralDirectory, VERSION_NEEDED);
+            writeShort(centralDirectory, VERSION_NEEDED);
+            writeEntryFields(centralDirectory, entry);
+            writeShort(centralDirectory, entry.name.length);
+            // Extra field, comment, disk number, internal and external attributes
+            writeShort(centralDirectory, 0);
+            writeShort(centralDirectory, 0);
+            writeShort(centralDirectory, 0);
+            writeShort(centralDirectory, 0);
+            writeInt(centralDirectory, 0);
+            writeInt(centralDirectory, (int) entry.offset);
+            centralDirectory.write(entry.name);
+        }
+
+        int centralDirectorySize = centralDirectory.size();
+        if (centralDirectoryOffset + centralDirectorySize > MAX_SIZE) throw new IOException("Too large for a zip without Zip64");
+
+        writeInt(centralDirectory, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        // This disk and the disk the central directory starts on
+        writeShort(centralDirectory, 0);
+        writeShort(centralDirectory, 0);
+        writeShort(centralDirectory, written.size());
+        writeShort(centralDirectory, written.size());
+        writeInt(centralDirectory, centralDirectorySize);
+        writeInt(centralDirectory, (int) centralDirectoryOffset);
+        // Comment length
+        writeShort(centralDirectory, 0);
+
+        centralDirectory.writeTo(out);
+        out.flush();
+    }
+
+    // Fields shared by the local header and the central directory, from the flags to the uncompressed size
+    protected void writeEntryFields(ByteArrayOutputStream out, Entry entry) {
+        writeShort(out, FLAG_UTF8);
+        writeShort(out, entry.method);
+        writeShort(out, DOS_TIME);
+        writeShort(out, DOS_DATE);
+        writeInt(out, (int) entry.crc);
+        writeInt(out, entry.data.length);
+        writeInt(out, (int) entry.size);
+    }
+
+    // Zip fields are little-endian
+    protected static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    protected static void writeInt(ByteArrayOutputStream out, int value) {
+        writeShort(out, value & 0xFFFF);
+        writeShort(out, (value >>> 16) & 0xFFFF);
+    }
+
+    protected static class Entry {
+        byte[] name;
+        int method;
+        long crc;
+        long size;
+        byte[] data;
+        long offset;
+    }
+
+}
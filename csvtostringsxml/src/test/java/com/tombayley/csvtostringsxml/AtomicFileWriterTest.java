@@ -0,0 +1,179 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * AtomicFileWriter leaves files that already hold the new bytes untouched, never leaves a temp
+ * file behind, and syncs what it wrote when the FsyncPolicy says to.
+ */
+public class AtomicFileWriterTest {
+
+    protected static final FileTime OLD_TIME = FileTime.fromMillis(1_000_000_000_000L);
+    protected static final byte[] OLD_BYTES = "old".getBytes(StandardCharsets.UTF_8);
+    protected static final byte[] NEW_BYTES = "new".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected Path dir;
+    protected Path file;
+
+    // Files and directories synced by the writer, in order
+    protected final List<Path> syncedFiles = new ArrayList<>();
+    protected final List<Path> syncedDirs = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        dir = temporaryFolder.newFolder("values-de").toPath();
+        file = dir.resolve("strings.xml");
+        Files.write(file, OLD_BYTES);
+        Files.setLastModifiedTime(file, OLD_TIME);
+    }
+
+    protected AtomicFileWriter createWriter(CsvToStringsXml.FsyncPolicy fsyncPolicy) {
+        return new AtomicFileWriter(fsyncPolicy) {
+            @Override
+            protected void syncFile(Path file) throws IOException {
+                super.syncFile(file);
+                syncedFiles.add(file);
+            }
+
+            @Override
+            protected void syncDir(Path dir) {
+                super.syncDir(dir);
+                syncedDirs.add(dir);
+            }
+        };
+    }
+
+    protected List<String> listDir() {
+        String[] names = dir.toFile().list();
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+
+    @Test
+    public void identicalFileIsSkipped() throws IOException {
+        AtomicFileWriter writer = createWriter(CsvToStringsXml.FsyncPolicy.AT_END);
+
+        assertFalse(writer.write(file, OLD_BYTES.clone()));
+        assertEquals(OLD_TIME, Files.getLastModifiedTime(file));
+        assertEquals(Collections.singletonList("strings.xml"), listDir());
+
+        // Nothing written, so nothing to sync
+        writer.finish();
+        assertEquals(Collections.emptyList(), syncedFiles);
+        assertEquals(Collections.emptyList(), syncedDirs);
+    }
+
+    @Test
+    public void changedFileIsReplaced() throws IOException {
+        assertTrue(createWriter(CsvToStringsXml.FsyncPolicy.NONE).write(file, NEW_BYTES));
+
+        assertArrayEquals(NEW_BYTES, Files.readAllBytes(file));
+        assertFalse(OLD_TIME.equals(Files.getLastModifiedTime(file)));
+        assertEquals(Collections.singletonList("strings.xml"), listDir());
+
+        // Same length, different bytes
+        assertTrue(createWriter(CsvToStringsXml.FsyncPolicy.NONE).write(file, "NEW".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("NEW", new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void missingDirsAreCreated() throws IOException {
+        Path newFile = temporaryFolder.getRoot().toPath().resolve("res/values-fr/strings.xml");
+
+        assertTrue(createWriter(CsvToStringsXml.FsyncPolicy.NONE).write(newFile, NEW_BYTES));
+        assertArrayEquals(NEW_BYTES, Files.readAllBytes(newFile));
+    }
+
+    @Test
+    public void tempFileIsRemovedAfterFailedMove() throws IOException {
+        AtomicFileWriter writer = new AtomicFileWriter(CsvToStringsXml.FsyncPolicy.AT_END) {
+            @Override
+            protected void move(Path source, Path target) throws IOException {
+                assertTrue(Files.isRegularFile(source));
+                assertTrue(source.getFileName().toString().endsWith(TEMP_FILE_SUFFIX));
+                throw new IOException("Move failed");
+            }
+        };
+
+        try {
+            writer.write(file, NEW_BYTES);
+            fail("Move didn't fail");
+        } catch (IOException e) {
+            assertEquals("Move failed", e.getMessage());
+        }
+
+        // The old file is left whole, and isn't synced as if it had been written
+        assertArrayEquals(OLD_BYTES, Files.readAllBytes(file));
+        assertEquals(Collections.singletonList("strings.xml"), listDir());
+        assertTrue(writer.unsyncedFiles.isEmpty());
+        assertTrue(writer.unsyncedDirs.isEmpty());
+    }
+
+    @Test
+    public void atEndSyncsInFinish() throws IOException {
+        AtomicFileWriter writer = createWriter(CsvToStringsXml.FsyncPolicy.AT_END);
+        Path otherFile = temporaryFolder.newFolder("values-fr").toPath().resolve("strings.xml");
+
+        writer.write(file, NEW_BYTES);
+        writer.write(otherFile, NEW_BYTES);
+        assertEquals(Collections.emptyList(), syncedFiles);
+        assertEquals(Collections.emptyList(), syncedDirs);
+
+        writer.finish();
+        assertEquals(new HashSet<>(Arrays.asList(file, otherFile)), new HashSet<>(syncedFiles));
+        assertEquals(new HashSet<>(Arrays.asList(dir.toAbsolutePath(), otherFile.toAbsolutePath().getParent())), new HashSet<>(syncedDirs));
+        assertEquals(2, syncedFiles.size());
+
+        // Each file is synced once, by the finish() after it was written
+        writer.finish();
+        assertEquals(2, syncedFiles.size());
+        assertEquals(2, syncedDirs.size());
+    }
+
+    @Test
+    public void perFileSyncsEachDirAsWritten() throws IOException {
+        AtomicFileWriter writer = createWriter(CsvToStringsXml.FsyncPolicy.PER_FILE);
+
+        writer.write(file, NEW_BYTES);
+        assertEquals(Collections.singletonList(dir.toAbsolutePath()), syncedDirs);
+
+        writer.finish();
+        assertEquals(Collections.emptyList(), syncedFiles);
+        assertEquals(1, syncedDirs.size());
+    }
+
+    @Test
+    public void noneNeverSyncs() throws IOException {
+        AtomicFileWriter writer = createWriter(CsvToStringsXml.FsyncPolicy.NONE);
+
+        writer.write(file, NEW_BYTES);
+        writer.finish();
+        assertEquals(Collections.emptyList(), syncedFiles);
+        assertEquals(Collections.emptyList(), syncedDirs);
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Every convert overload that takes the spreadsheet directly must give the same files as
+ * converting the same spreadsheet from a path, and must leave the stream or reader it was given
+ * open.
+ */
+public class ConvertOverloadsTest {
+
+    protected static final String TSV = "Name\ten\tde\n"
+            + "hello\tHello\tHallo\n"
+            + "multi\t\"One\nTwo\"\t\"Eins\tZwei\"\n"
+            + "bye\tIt's done\tTsch\u00fcss\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected File spreadsheet;
+    protected HashMap<String, LinkedHashMap<String, String>> existing;
+
+    @Before
+    public void setUp() throws IOException {
+        spreadsheet = temporaryFolder.newFile("sheet.tsv");
+        Files.write(spreadsheet.toPath(), TSV.getBytes(StandardCharsets.UTF_8));
+
+        existing = new HashMap<>();
+        existing.put("de", ResDirsTest.strings("old", "Alt", "hello", "Hallo alt"));
+    }
+
+    protected static CsvToStringsXml createConverter(String encoding) {
+        return new CsvToStringsXml(new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setStringIdColumnTitle("Name")
+                .setEncoding(encoding)
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().build()));
+    }
+
+    protected static void assertSameFiles(InMemoryOutputSink expected, InMemoryOutputSink sink) {
+        assertEquals(expected.getFiles().keySet(), sink.getFiles().keySet());
+        for (Map.Entry<String, byte[]> file : expected.getFiles().entrySet()) {
+            assertArrayEquals(file.getKey(), file.getValue(), sink.getBytes(file.getKey()));
+            assertEquals(expected.getPath(file.getKey()), sink.getPath(file.getKey()));
+        }
+    }
+
+    // An input stream that notes whether it was closed
+    protected static class TrackingInputStream extends ByteArrayInputStream {
+        boolean isClosed = false;
+
+        TrackingInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            isClosed = true;
+            super.close();
+        }
+    }
+
+    protected static class TrackingReader extends StringReader {
+        boolean isClosed = false;
+
+        TrackingReader(String text) {
+            super(text);
+        }
+
+        @Override
+        public void close() {
+            isClosed = true;
+            super.close();
+        }
+    }
+
+    @Test
+    public void overloadsMatchPath() throws IOException {
+        CsvToStringsXml converter = createConverter("UTF-8");
+
+        InMemoryOutputSink fromPath = new InMemoryOutputSink();
+        assertTrue(converter.convert(spreadsheet.toPath(), existing, fromPath).isFinished());
+        assertEquals(Arrays.asList("hello", "multi", "bye", "old"), MergeOrderTest.getStringIds(fromPath.getBytes("de")));
+
+        TrackingInputStream inputStream = new TrackingInputStream(TSV.getBytes(StandardCharsets.UTF_8));
+        InMemoryOutputSink fromStream = new InMemoryOutputSink();
+        assertTrue(converter.convert(inputStream, existing, fromStream).isFinished());
+        assertSameFiles(fromPath, fromStream);
+        assertFalse(inputStream.isClosed);
+
+        TrackingReader reader = new TrackingReader(TSV);
+        InMemoryOutputSink fromReader = new InMemoryOutputSink();
+        assertTrue(converter.convert(reader, existing, fromReader).isFinished());
+        assertSameFiles(fromPath, fromReader);
+        assertFalse(reader.isClosed);
+
+        InMemoryOutputSink fromRows = new InMemoryOutputSink();
+        assertTrue(converter.convert(converter.readCsv(new StringReader(TSV)).iterator(), existing, fromRows).isFinished());
+        assertSameFiles(fromPath, fromRows);
+    }
+
+    @Test
+    public void inputStreamIsReadInConverterEncoding() throws IOException {
+        Charset latin1 = StandardCharsets.ISO_8859_1;
+        Files.write(spreadsheet.toPath(), TSV.getBytes(latin1));
+        CsvToStringsXml converter = createConverter(latin1.name());
+
+        InMemoryOutputSink fromPath = new InMemoryOutputSink();
+        converter.convert(spreadsheet.toPath(), null, fromPath);
+        InMemoryOutputSink fromStream = new InMemoryOutputSink();
+        converter.convert(new ByteArrayInputStream(TSV.getBytes(latin1)), null, fromStream);
+
+        assertSameFiles(fromPath, fromStream);
+        assertTrue(new String(fromStream.getBytes("de"), latin1).contains("Tsch\u00fcss"));
+    }
+
+    @Test
+    public void existingMapsAreNotChanged() {
+        createConverter("UTF-8").convert(new StringReader(TSV), existing, new InMemoryOutputSink());
+
+        assertEquals(ResDirsTest.strings("old", "Alt", "hello", "Hallo alt"), existing.get("de"));
+    }
+
+}
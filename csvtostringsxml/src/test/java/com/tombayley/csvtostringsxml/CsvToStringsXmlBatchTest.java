@@ -0,0 +1,156 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A batch reads its jobs from a manifest relative to the manifest's directory, and runs them all
+ * to the end, keeping each job's result or failure whatever the others do.
+ */
+public class CsvToStringsXmlBatchTest {
+
+    protected static final String TSV = "Name\ten\tde\nhello\tHello &appname;\tHallo\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = temporaryFolder.getRoot();
+        for (String app : new String[]{"app", "other"}) {
+            new File(root, app).mkdirs();
+            Files.write(new File(root, app + "/sheet.tsv").toPath(), TSV.getBytes(StandardCharsets.UTF_8));
+        }
+        MergeOrderTest.writeStringsXml(new File(root, "app/res/values"), ResDirsTest.strings("own", "Own"));
+        MergeOrderTest.writeStringsXml(new File(root, "shared/res/values"), ResDirsTest.strings("shared", "Shared", "own", "Shared own"));
+    }
+
+    protected File writeManifest(String... lines) throws IOException {
+        File manifest = new File(root, "batch.properties");
+        Files.write(manifest.toPath(), String.join("\n", lines).getBytes(StandardCharsets.ISO_8859_1));
+        return manifest;
+    }
+
+    protected String readOutput(String path) throws IOException {
+        return new String(Files.readAllBytes(new File(root, path).toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void manifestIsReadRelativeToItsDir() throws IOException {
+        File manifest = writeManifest(
+                "other.spreadsheetPath=other/sheet.tsv",
+                "other.outputPath=" + new File(root, "other/out").getAbsolutePath(),
+                "other.stringIdColumnTitle=Name",
+                "other.defaultLocaleCode=de",
+                "app.spreadsheetPath=app/sheet.tsv",
+                "app.outputPath=app/out",
+                "app.existingResourcesDirPaths=app/res, shared/res,",
+                "app.stringIdColumnTitle=Name",
+                "app.encoding=UTF-8",
+                "app.incremental=true",
+                "app.docType.appname=My App",
+                "app.docType.company=Acme",
+                "ignored=no job name"
+        );
+
+        CsvToStringsXmlBatch batch = CsvToStringsXmlBatch.fromManifest(manifest.toPath());
+        assertEquals(2, batch.jobs.size());
+
+        // In order of name, whatever order the manifest lists them in
+        CsvToStringsXmlBatch.Job app = batch.jobs.get(0);
+        assertEquals("app", app.name);
+        assertEquals(new File(root, "app/sheet.tsv").getPath(), app.builder.spreadsheetPath);
+        assertEquals(new File(root, "app/out").getPath(), app.builder.outputPath);
+        assertEquals(Arrays.asList(new File(root, "app/res").getPath(), new File(root, "shared/res").getPath()),
+                app.builder.existingResourcesDirPaths);
+        assertTrue(app.builder.incremental);
+        assertEquals("en", app.builder.defaultLocaleCode);
+        assertEquals(2, app.builder.docType.entities.size());
+        assertEquals("My App", app.builder.docType.entities.get("appname").value);
+        assertEquals("Acme", app.builder.docType.entities.get("company").value);
+
+        CsvToStringsXmlBatch.Job other = batch.jobs.get(1);
+        assertEquals("other", other.name);
+        assertEquals(new File(root, "other/out").getAbsolutePath(), other.builder.outputPath);
+        assertEquals("de", other.builder.defaultLocaleCode);
+        assertFalse(other.builder.incremental);
+        assertTrue(other.builder.docType.entities.isEmpty());
+
+        List<CsvToStringsXmlBatch.JobResult> results = batch.setThreads(2).run();
+        assertTrue(results.get(0).isSuccessful());
+        assertTrue(results.get(1).isSuccessful());
+
+        String en = readOutput("app/out/values/strings.xml");
+        assertTrue(en.contains("<!ENTITY appname \"My App\">"));
+        assertEquals(Arrays.asList("hello", "own", "shared"), MergeOrderTest.getStringIds(en.getBytes(StandardCharsets.UTF_8)));
+        // The first res directory wins
+        assertTrue(en.contains(">Own<"));
+        assertTrue(new File(root, "other/out/values-en/strings.xml").isFile());
+    }
+
+    @Test
+    public void failingJobsDontStopOthers() throws IOException {
+        CsvToStringsXmlBatch batch = new CsvToStringsXmlBatch().setThreads(2);
+        batch.addJob("first", builder("first", "app", null));
+        batch.addJob("error", builder("error", "other", new ConversionListener() {
+            @Override
+            public void onConversionStarted(ConversionRun run) {
+                throw new StackOverflowError();
+            }
+        }));
+        batch.addJob("exception", builder("exception", "other", new ConversionListener() {
+            @Override
+            public void onConversionStarted(ConversionRun run) {
+                throw new IllegalStateException("Listener failed");
+            }
+        }));
+        batch.addJob("missing", builder("missing", "missing", null));
+        batch.addJob("last", builder("last", "other", null));
+
+        List<CsvToStringsXmlBatch.JobResult> results = batch.run();
+
+        assertEquals(5, results.size());
+        assertEquals("first", results.get(0).getName());
+        assertTrue(results.get(0).isSuccessful());
+
+        assertFalse(results.get(1).isSuccessful());
+        assertTrue(results.get(1).getError() instanceof StackOverflowError);
+        assertNull(results.get(1).getResult());
+
+        assertFalse(results.get(2).isSuccessful());
+        assertTrue(results.get(2).getError() instanceof IllegalStateException);
+
+        // A missing spreadsheet fails the run rather than throwing
+        assertFalse(results.get(3).isSuccessful());
+        assertNull(results.get(3).getError());
+
+        assertEquals("last", results.get(4).getName());
+        assertTrue(results.get(4).isSuccessful());
+    }
+
+    protected CsvToStringsXml.CsvToStringsXmlBuilder builder(String jobName, String app, ConversionListener listener) {
+        return new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setSpreadsheetPath(new File(root, app + "/sheet.tsv").getPath())
+                .setOutputPath(new File(root, "out/" + jobName).getPath())
+                .setStringIdColumnTitle("Name")
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().addItem("appname", "My App").build())
+                .setConversionListener(listener);
+    }
+
+}
@@ -0,0 +1,205 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The watcher reruns the converter once per burst of changes to its inputs, for only the locales
+ * the changes can affect, and never for the files it writes itself.
+ */
+public class CsvToStringsXmlWatcherTest {
+
+    protected static final long SETTLE_MILLIS = 200;
+    // Long enough for any event to have arrived and settled
+    protected static final long QUIET_MILLIS = 1500;
+    // Marks a run of every locale in the queue of runs
+    protected static final Set<String> EVERY_LOCALE = Collections.singleton("*");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected File spreadsheet;
+    protected File resDir;
+    protected File outputDir;
+
+    // Locales of each run the watcher started, in order
+    protected final BlockingQueue<Set<String>> runs = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws IOException {
+        spreadsheet = temporaryFolder.newFile("sheet.tsv");
+        writeSheet("Hallo", "Bonjour");
+
+        resDir = temporaryFolder.newFolder("res");
+        MergeOrderTest.writeStringsXml(new File(resDir, "values"), ResDirsTest.strings("old", "Old"));
+        MergeOrderTest.writeStringsXml(new File(resDir, "values-de"), ResDirsTest.strings("old", "Alt"));
+
+        // Next to the spreadsheet, so the manifest is written into a watched directory
+        outputDir = new File(temporaryFolder.getRoot(), "out");
+    }
+
+    protected void writeSheet(String de, String fr) throws IOException {
+        String tsv = "Name\ten\tde\tfr\n" + "hello\tHello\t" + de + "\t" + fr + "\n";
+        Files.write(spreadsheet.toPath(), tsv.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected CsvToStringsXml.CsvToStringsXmlBuilder builder() {
+        return new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setSpreadsheetPath(spreadsheet.getPath())
+                .setExistingResourcesDirPath(resDir.getPath())
+                .setOutputPath(outputDir.getPath())
+                .setStringIdColumnTitle("Name")
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().build())
+                .setIncremental(true);
+    }
+
+    // Records the locales of each run
+    protected CsvToStringsXml createConverter() {
+        return new CsvToStringsXml(builder()) {
+            @Override
+            protected void start(Set<String> localeCodes) {
+                super.start(localeCodes);
+                runs.add(localeCodes == null ? EVERY_LOCALE : localeCodes);
+            }
+        };
+    }
+
+    protected Thread startWatching(CsvToStringsXmlWatcher watcher) throws InterruptedException {
+        Thread thread = new Thread(() -> {
+            try {
+                watcher.watch();
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+            }
+        });
+        thread.start();
+
+        assertEquals(EVERY_LOCALE, runs.poll(10, TimeUnit.SECONDS));
+        return thread;
+    }
+
+    protected void stopWatching(CsvToStringsXmlWatcher watcher, Thread thread) throws IOException, InterruptedException {
+        watcher.close();
+        thread.join(10_000);
+    }
+
+    @Test
+    public void ignoresGeneratedFiles() throws IOException {
+        CsvToStringsXmlWatcher watcher = new CsvToStringsXmlWatcher(createConverter());
+        Path root = temporaryFolder.getRoot().toPath();
+        Path valuesDir = resDir.toPath().resolve("values-de");
+
+        try {
+            assertFalse(watcher.handleEvent(outputDir.toPath().resolve("values-de"), StandardWatchEventKinds.ENTRY_MODIFY,
+                    outputDir.toPath().resolve("values-de/strings.xml")));
+            assertFalse(watcher.handleEvent(root, StandardWatchEventKinds.ENTRY_MODIFY,
+                    root.resolve("out" + CsvToStringsXml.MANIFEST_SUFFIX)));
+            assertFalse(watcher.handleEvent(root, StandardWatchEventKinds.ENTRY_CREATE,
+                    root.resolve(".out" + CsvToStringsXml.MANIFEST_SUFFIX + ".1f2e.tmp")));
+            assertFalse(watcher.handleEvent(valuesDir, StandardWatchEventKinds.ENTRY_CREATE,
+                    valuesDir.resolve(".strings.xml.1f2e.tmp")));
+            assertFalse(watcher.handleEvent(root, StandardWatchEventKinds.ENTRY_CREATE, root.resolve(".sheet.tsv.swp")));
+            assertEquals(Collections.emptySet(), watcher.takeChangedLocaleCodes());
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void notesLocalesOfChangedInputs() throws IOException {
+        CsvToStringsXml converter = createConverter();
+        CsvToStringsXmlWatcher watcher = new CsvToStringsXmlWatcher(converter);
+        Path valuesDir = resDir.toPath().resolve("values-de");
+
+        try {
+            assertTrue(watcher.handleEvent(valuesDir, StandardWatchEventKinds.ENTRY_MODIFY, valuesDir.resolve("strings.xml")));
+            assertTrue(watcher.handleEvent(resDir.toPath(), StandardWatchEventKinds.ENTRY_DELETE, resDir.toPath().resolve("values")));
+            assertEquals(new HashSet<>(Arrays.asList("de", "en")), watcher.takeChangedLocaleCodes());
+
+            // Nothing cached yet, so the spreadsheet's changes aren't known
+            assertTrue(watcher.handleEvent(spreadsheet.getParentFile().toPath(), StandardWatchEventKinds.ENTRY_MODIFY, spreadsheet.toPath()));
+            assertNull(watcher.takeChangedLocaleCodes());
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void spreadsheetChangesAffectTheirLocales() throws IOException {
+        CsvToStringsXml converter = createConverter();
+        converter.cacheInputs = true;
+        converter.convert();
+
+        writeSheet("Hallo!", "Bonjour");
+        assertEquals(Collections.singleton("de"), converter.readChangedSpreadsheetLocales());
+
+        assertEquals(Collections.emptySet(), converter.readChangedSpreadsheetLocales());
+
+        // A new row can change the order of any locale
+        Files.write(spreadsheet.toPath(), "Name\ten\tde\tfr\nnew\tNew\t\t\nhello\tHello\tHallo!\tBonjour\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(converter.readChangedSpreadsheetLocales());
+    }
+
+    @Test
+    public void convertsOnlyGivenLocales() throws IOException {
+        CsvToStringsXml converter = createConverter();
+        converter.cacheInputs = true;
+        converter.convert();
+
+        writeSheet("Hallo!", "Salut");
+        converter.readChangedSpreadsheetLocales();
+        ConversionResult result = converter.convert(Collections.singleton("de"));
+
+        assertEquals(Collections.singleton("de"), result.getWrittenLocales());
+        assertTrue(new String(Files.readAllBytes(outputDir.toPath().resolve("values-fr/strings.xml")), StandardCharsets.UTF_8).contains("Bonjour"));
+
+        // fr kept its hash, so a full run still sees it changed
+        ConversionResult full = converter.convert();
+        assertEquals(Collections.singleton("fr"), full.getWrittenLocales());
+    }
+
+    @Test
+    public void burstsAreMergedIntoOneRun() throws IOException, InterruptedException {
+        CsvToStringsXmlWatcher watcher = new CsvToStringsXmlWatcher(createConverter()).setSettleMillis(SETTLE_MILLIS);
+        Thread thread = startWatching(watcher);
+
+        try {
+            // The first run wrote the output and manifest, which mustn't start another
+            assertNull(runs.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS));
+
+            for (int i = 0; i < 5; i++) {
+                writeSheet("Hallo " + i, "Bonjour");
+            }
+            assertEquals(Collections.singleton("de"), runs.poll(10, TimeUnit.SECONDS));
+            assertNull(runs.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS));
+
+            MergeOrderTest.writeStringsXml(new File(resDir, "values-de"), ResDirsTest.strings("old", "Alt!"));
+            assertEquals(Collections.singleton("de"), runs.poll(10, TimeUnit.SECONDS));
+            assertNull(runs.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS));
+        } finally {
+            stopWatching(watcher, thread);
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class DocTypeReplacerTest {
+
+    protected static DocTypeReplacer replacer(Map<String, CsvToStringsXml.DocType.Item> entities, String... keysAndValues) {
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            entities.put(keysAndValues[i], new CsvToStringsXml.DocType.Item(keysAndValues[i + 1]));
+        }
+        return new DocTypeReplacer(entities);
+    }
+
+    protected static DocTypeReplacer replacer(String... keysAndValues) {
+        return replacer(new LinkedHashMap<>(), keysAndValues);
+    }
+
+    // Key to number of references in the replaced text
+    protected static Map<String, Integer> countOccurrences(DocTypeReplacer replacer, String text) {
+        TreeMap<String, Integer> occurrences = new TreeMap<>();
+        replacer.replace(text, (entityIndex, count) -> occurrences.put(replacer.getKey(entityIndex), count));
+        return occurrences;
+    }
+
+    @Test
+    public void overlappingValuesEarliestStartWins() {
+        DocTypeReplacer replacer = replacer("app", "My App", "store", "App Store");
+
+        assertEquals("&app; Store", replacer.replace("My App Store", null));
+        assertEquals("Get it on the &store;", replacer.replace("Get it on the App Store", null));
+    }
+
+    @Test
+    public void nestedValuesLongestWins() {
+        DocTypeReplacer replacer = replacer("company", "Acme", "companyFull", "Acme Corp");
+
+        assertEquals("By &companyFull;", replacer.replace("By Acme Corp", null));
+        assertEquals("By &company; Inc", replacer.replace("By Acme Inc", null));
+        assertEquals("&companyFull; &company;", replacer.replace("Acme Corp Acme", null));
+    }
+
+    @Test
+    public void tiedValuesSortedKeyWins() {
+        String text = "Made by Acme";
+
+        // The same whatever order the entities were added in
+        assertEquals("Made by &brand;", replacer("company", "Acme", "brand", "Acme").replace(text, null));
+        assertEquals("Made by &brand;", replacer("brand", "Acme", "company", "Acme").replace(text, null));
+        for (int i = 0; i < 50; i++) {
+            String first = String.format("k%02d", i);
+            String second = String.format("k%02d", i + 1);
+            DocTypeReplacer replacer = replacer(new HashMap<>(), second, "Acme", first, "Acme", "z", "Acme");
+            assertEquals("Made by &" + first + ";", replacer.replace(text, null));
+        }
+    }
+
+    @Test
+    public void existingReferencesAreKeptAndCounted() {
+        DocTypeReplacer replacer = replacer("appname", "My App", "name", "name");
+
+        assertEquals("&appname; is &appname;", replacer.replace("&appname; is My App", null));
+        // The value "name" isn't replaced inside the reference to appname
+        assertEquals("&appname; &name;", replacer.replace("&appname; name", null));
+        assertEquals("&name;", replacer.replace("&name;", null));
+
+        Map<String, Integer> occurrences = countOccurrences(replacer, "&appname; is My App, &name; name");
+        assertEquals(Integer.valueOf(2), occurrences.get("appname"));
+        assertEquals(Integer.valueOf(2), occurrences.get("name"));
+    }
+
+    @Test
+    public void textWithoutValuesIsUnchanged() {
+        DocTypeReplacer replacer = replacer("appname", "My App");
+        String text = "Nothing to replace & no references";
+
+        assertEquals(text, replacer.replace(text, null));
+        assertEquals(0, countOccurrences(replacer, text).size());
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * escapeString(String) escapes in one pass, and must give the same text as the chain of replaces
+ * it took the place of.
+ */
+public class EscapeStringTest {
+
+    // Chars the escaping looks at, plus ones it should pass through unchanged
+    protected static final String[] PIECES = {
+            "\"", "'", "\\", "&", " & ", " ", ".", "...", "\u2026", "<", ">", "@", "?", "\n", "\r\n",
+            "\ud83d\ude00", "\ud83d", "\ude00", "a", "Z", "\u00e9", "\u4e2d", "&amp;", "&appname;",
+    };
+
+    protected final CsvToStringsXml converter = new CsvToStringsXml(new CsvToStringsXml.CsvToStringsXmlBuilder()
+            .setDocType(new CsvToStringsXml.DocTypeBuilder().build()));
+
+    // escapeString as it was before the single pass
+    protected static String escapeWithReplaces(String stringText) {
+        return stringText.replace("...", "&#8230;")
+                .replace("\u2026", "&#8230;")
+                .replace("\\\"", "\"")
+                .replace("\"", "\\\"")
+                .replace("\\'", "'")
+                .replace("'", "\\'")
+                .replace(" & ", " &amp; ");
+    }
+
+    protected void assertSameAsReplaces(String text) {
+        assertEquals("Escaping [" + text + "]", escapeWithReplaces(text), converter.escapeString(text));
+    }
+
+    @Test
+    public void matchesReplacesOnKnownCases() {
+        String[] texts = {
+                "", "plain", "Don't", "Don\\'t", "Say \"hi\"", "Say \\\"hi\\\"", "\\\\\"", "\\\\'",
+                "Wait...", "Wait....", "..", "\u2026", "Tom & Jerry", " & & ", "A&B", "a &b", "& ",
+                "@string/app_name", "?attr/colorPrimary", "<b>bold</b>", "line\nbreak", "\\",
+                "\ud83d\ude00 emoji", "lone \ud83d surrogate", "trailing\\",
+        };
+        for (String text : texts) {
+            assertSameAsReplaces(text);
+        }
+    }
+
+    @Test
+    public void matchesReplacesOnRandomStrings() {
+        Random random = new Random(5);
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < 100_000; i++) {
+            text.setLength(0);
+            int pieces = random.nextInt(12);
+            for (int j = 0; j < pieces; j++) {
+                text.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            assertSameAsReplaces(text.toString());
+        }
+    }
+
+}
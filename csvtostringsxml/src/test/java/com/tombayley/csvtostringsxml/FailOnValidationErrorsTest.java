@@ -0,0 +1,65 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FailOnValidationErrorsTest {
+
+    // The German placeholder doesn't match the default one, which is an error
+    protected static final String SHEET = "Name\ten\tde\tfr\n"
+            + "count\t%d items\t%s Elemente\t%d articles\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected CsvToStringsXml.CsvToStringsXmlBuilder builder(File outputDir) throws IOException {
+        File spreadsheet = temporaryFolder.newFile();
+        Files.write(spreadsheet.toPath(), SHEET.getBytes(StandardCharsets.UTF_8));
+
+        File resDir = temporaryFolder.newFolder();
+        new File(resDir, "values").mkdirs();
+        Files.write(new File(resDir, "values/strings.xml").toPath(),
+                "<resources><string name=\"other\">Other</string></resources>".getBytes(StandardCharsets.UTF_8));
+
+        return new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setSpreadsheetPath(spreadsheet.getPath())
+                .setExistingResourcesDirPath(resDir.getPath())
+                .setOutputPath(outputDir.getPath())
+                .setStringIdColumnTitle("Name")
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().build())
+                .setValidation(true)
+                .setFailOnValidationErrors(true);
+    }
+
+    @Test
+    public void errorsStopTheRunBeforeAnythingIsWritten() throws IOException {
+        File outputDir = new File(temporaryFolder.getRoot(), "out");
+        ConversionResult result = new CsvToStringsXml(builder(outputDir)).convert();
+
+        assertFalse(result.isFinished());
+        assertTrue(result.hasValidationErrors());
+        assertFalse(outputDir.exists());
+    }
+
+    // Streaming validates each locale as it is written, so it couldn't stop before the first write
+    @Test
+    public void streamingMergeIsRejected() throws IOException {
+        File outputDir = new File(temporaryFolder.getRoot(), "out");
+        ConversionResult result = new CsvToStringsXml(builder(outputDir).setStreamingMerge(true)).convert();
+
+        assertFalse(result.isFinished());
+        assertEquals(0, result.getWrittenLocales().size());
+        assertFalse(outputDir.exists());
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Locales left out by setIncludedLocaleCodes or setExcludedLocaleCodes are neither read nor
+ * written, and strings whose id fails setStringIdFilter are dropped as the spreadsheet and the
+ * existing strings.xml files are read, so they are never merged into the output.
+ */
+public class FilterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected File spreadsheet;
+    protected File resDir;
+    protected File outputDir;
+
+    @Before
+    public void setUp() throws IOException {
+        spreadsheet = temporaryFolder.newFile("sheet.tsv");
+        Files.write(spreadsheet.toPath(), ("Name\ten\tde\tfr\n"
+                + "hello\tHello\tHallo\tBonjour\n"
+                + "debug_menu\tDebug\tDebug de\tDebug fr\n"
+                + "bye\tBye\tTsch\u00fcss\tSalut\n").getBytes(StandardCharsets.UTF_8));
+
+        resDir = temporaryFolder.newFolder("res");
+        MergeOrderTest.writeStringsXml(new File(resDir, "values"), ResDirsTest.strings("old", "Old", "debug_old", "Debug old"));
+        MergeOrderTest.writeStringsXml(new File(resDir, "values-de"), ResDirsTest.strings("old", "Alt", "debug_old", "Debug alt"));
+        // Not XML, so reading it would fail the locale
+        new File(resDir, "values-fr").mkdirs();
+        Files.write(new File(resDir, "values-fr/strings.xml").toPath(), "not xml".getBytes(StandardCharsets.UTF_8));
+
+        outputDir = new File(temporaryFolder.getRoot(), "out");
+    }
+
+    protected CsvToStringsXml.CsvToStringsXmlBuilder builder() {
+        return new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setSpreadsheetPath(spreadsheet.getPath())
+                .setExistingResourcesDirPath(resDir.getPath())
+                .setOutputPath(outputDir.getPath())
+                .setStringIdColumnTitle("Name")
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().build());
+    }
+
+    protected boolean isWritten(String valuesDir) {
+        return new File(outputDir, valuesDir + "/strings.xml").isFile();
+    }
+
+    protected String readOutput(String valuesDir) throws IOException {
+        return new String(Files.readAllBytes(new File(outputDir, valuesDir + "/strings.xml").toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void excludedLocalesAreNotReadOrWritten() {
+        ConversionResult result = new CsvToStringsXml(builder().setExcludedLocaleCodes("fr")).convert();
+
+        assertTrue(result.isFinished());
+        assertEquals(Collections.emptySet(), result.getFailedLocales());
+        assertEquals(new HashSet<>(Arrays.asList("en", "de")), result.getWrittenLocales());
+        assertTrue(isWritten("values-de"));
+        assertFalse(isWritten("values-fr"));
+    }
+
+    @Test
+    public void onlyIncludedLocalesAreWritten() {
+        ConversionResult result = new CsvToStringsXml(builder().setIncludedLocaleCodes("de")).convert();
+
+        assertEquals(Collections.singleton("de"), result.getWrittenLocales());
+        assertTrue(isWritten("values-de"));
+        assertFalse(isWritten("values"));
+        assertFalse(isWritten("values-fr"));
+    }
+
+    @Test
+    public void filteredLocalesAreNotRead() throws IOException {
+        for (boolean memoryMapped : new boolean[]{false, true}) {
+            TranslationTable table = new CsvToStringsXml(builder()
+                    .setIncludedLocaleCodes("en", "de")
+                    .setExcludedLocaleCodes("en")
+                    .setMemoryMappedSpreadsheet(memoryMapped)
+            ).readSpreadsheet(spreadsheet.toPath());
+
+            assertEquals(Collections.singleton("de"), table.getLocaleCodes());
+        }
+    }
+
+    @Test
+    public void filteredIdsAreNotRead() throws IOException, XMLStreamException {
+        CsvToStringsXml.CsvToStringsXmlBuilder builder = builder().setStringIdFilter(stringId -> !stringId.startsWith("debug_"));
+
+        for (boolean memoryMapped : new boolean[]{false, true}) {
+            TranslationTable table = new CsvToStringsXml(builder.setMemoryMappedSpreadsheet(memoryMapped)).readSpreadsheet(spreadsheet.toPath());
+
+            assertEquals(2, table.getRowCount());
+            assertEquals(-1, table.getRow("debug_menu"));
+            assertEquals(ResDirsTest.strings("hello", "Hallo", "bye", "Tsch\u00fcss"), table.toMap("de"));
+        }
+
+        HashMap<String, LinkedHashMap<String, String>> existing = new CsvToStringsXml(builder)
+                .readResStringFiles(Collections.singletonList(resDir.toPath()), new HashSet<>(Arrays.asList("en", "de")));
+        assertEquals(ResDirsTest.strings("old", "Old"), existing.get("en"));
+        assertEquals(ResDirsTest.strings("old", "Alt"), existing.get("de"));
+    }
+
+    @Test
+    public void filteredIdsAreNotMerged() throws IOException {
+        new CsvToStringsXml(builder()
+                .setExcludedLocaleCodes("fr")
+                .setStringIdFilter(stringId -> !stringId.startsWith("debug_"))
+        ).convert();
+
+        String de = readOutput("values-de");
+        assertEquals(Arrays.asList("hello", "bye", "old"), MergeOrderTest.getStringIds(de.getBytes(StandardCharsets.UTF_8)));
+        assertFalse(de.contains("Debug"));
+        assertEquals(Arrays.asList("hello", "bye", "old"), MergeOrderTest.getStringIds(readOutput("values").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void filteredIdsAreNotMergedFromMaps() {
+        HashMap<String, LinkedHashMap<String, String>> existing = new HashMap<>();
+        existing.put("de", ResDirsTest.strings("debug_old", "Debug alt", "old", "Alt"));
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+
+        new CsvToStringsXml(builder()
+                .setIncludedLocaleCodes("de")
+                .setStringIdFilter(stringId -> !stringId.startsWith("debug_"))
+        ).convert(spreadsheet.toPath(), existing, sink);
+
+        assertEquals(Collections.singleton("de"), sink.getFiles().keySet());
+        assertEquals(Arrays.asList("hello", "bye", "old"), MergeOrderTest.getStringIds(sink.getBytes("de")));
+        // The given map is left as it was
+        assertEquals(2, existing.get("de").size());
+    }
+
+}
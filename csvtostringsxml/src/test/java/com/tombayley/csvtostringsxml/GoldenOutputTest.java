@@ -0,0 +1,93 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Converts fixed sheets and compares the output byte for byte with the strings.xml files the
+ * converter wrote before its writer and tables were replaced. Each fixture directory holds
+ * translations.tsv, the existing android_strings and the expected output.
+ */
+public class GoldenOutputTest {
+
+    protected static final Path FIXTURES = Paths.get("src/test/resources");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // The example project's sheet and output
+    @Test
+    public void example() throws IOException {
+        assertGoldenOutput("example", "UTF-8", new CsvToStringsXml.DocTypeBuilder()
+                .addItem("appname", "My Cool App")
+                .build());
+    }
+
+    // Two DocType entities, translatable="false", ellipses, quotes and empty strings merged from existing files
+    @Test
+    public void edgeCasesUtf8() throws IOException {
+        assertGoldenOutput("edge-utf-8", "UTF-8", edgeDocType());
+    }
+
+    // As edgeCasesUtf8, with chars outside the encoding in an existing file
+    @Test
+    public void edgeCasesIso88591() throws IOException {
+        assertGoldenOutput("edge-iso-8859-1", "ISO-8859-1", edgeDocType());
+    }
+
+    protected static CsvToStringsXml.DocType edgeDocType() {
+        return new CsvToStringsXml.DocTypeBuilder()
+                .addItem("appname", "My Cool App")
+                .addItem("company", "Acme Corp")
+                .build();
+    }
+
+    protected void assertGoldenOutput(String fixture, String encoding, CsvToStringsXml.DocType docType) throws IOException {
+        Path fixtureDir = FIXTURES.resolve(fixture);
+        File outputDir = new File(temporaryFolder.getRoot(), fixture);
+
+        new CsvToStringsXml(new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setExistingResourcesDirPath(fixtureDir.resolve("android_strings").toString())
+                .setSpreadsheetPath(fixtureDir.resolve("translations.tsv").toString())
+                .setOutputPath(outputDir.getPath())
+                .setSpreadsheetDelimiter('\t')
+                .setDefaultLocaleCode("en")
+                .setDocType(docType)
+                .setEncoding(encoding)
+                .setStringIdColumnTitle("Name")
+        ).convert();
+
+        Path expectedDir = fixtureDir.resolve("expected");
+        TreeSet<String> expectedFiles = listFiles(expectedDir);
+        assertEquals(expectedFiles, listFiles(outputDir.toPath()));
+
+        for (String file : expectedFiles) {
+            assertArrayEquals(file,
+                    Files.readAllBytes(expectedDir.resolve(file)),
+                    Files.readAllBytes(outputDir.toPath().resolve(file)));
+        }
+    }
+
+    // Paths of the strings.xml files under a res directory, e.g. "values-de/strings.xml"
+    protected static TreeSet<String> listFiles(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.filter(Files::isRegularFile)
+                    .map(path -> dir.relativize(path).toString().replace(File.separatorChar, '/'))
+                    .collect(Collectors.toCollection(TreeSet::new));
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * In incremental mode a locale is only rewritten when its output would change, as told by the
+ * hashes in the manifest next to the output directory.
+ */
+public class IncrementalTest {
+
+    // Well before any run, so a rewrite is easy to tell apart
+    protected static final FileTime OLD_TIME = FileTime.fromMillis(1_000_000_000_000L);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected File spreadsheet;
+    protected File outputDir;
+
+    @Before
+    public void setUp() throws IOException {
+        spreadsheet = temporaryFolder.newFile("sheet.tsv");
+        outputDir = new File(temporaryFolder.getRoot(), "out");
+        writeSheet("Hello", "Hallo", "Bonjour");
+    }
+
+    protected void writeSheet(String en, String de, String fr) throws IOException {
+        String tsv = "Name\ten\tde\tfr\n" + "hello\t" + en + "\t" + de + "\t" + fr + "\n";
+        Files.write(spreadsheet.toPath(), tsv.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected CsvToStringsXml.CsvToStringsXmlBuilder builder() {
+        return new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setSpreadsheetPath(spreadsheet.getPath())
+                .setOutputPath(outputDir.getPath())
+                .setStringIdColumnTitle("Name")
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().build())
+                .setIncremental(true);
+    }
+
+    protected Path stringsXml(String valuesDir) {
+        return new File(outputDir, valuesDir + "/strings.xml").toPath();
+    }
+
+    // Backdates every strings.xml, so a file rewritten by a later run has a newer time
+    protected void backdateOutput() throws IOException {
+        for (String valuesDir : new String[]{"values", "values-de", "values-fr"}) {
+            Files.setLastModifiedTime(stringsXml(valuesDir), OLD_TIME);
+        }
+    }
+
+    @Test
+    public void unchangedLocalesAreSkipped() throws IOException {
+        ConversionResult first = new CsvToStringsXml(builder()).convert();
+        assertEquals(new HashSet<>(Arrays.asList("en", "de", "fr")), first.getWrittenLocales());
+        assertTrue(new File(outputDir + CsvToStringsXml.MANIFEST_SUFFIX).isFile());
+        backdateOutput();
+
+        writeSheet("Hello", "Hallo!", "Bonjour");
+        ConversionResult second = new CsvToStringsXml(builder()).convert();
+
+        assertEquals(new HashSet<>(Arrays.asList("de")), second.getWrittenLocales());
+        assertEquals(new HashSet<>(Arrays.asList("en", "fr")), second.getUnchangedLocales());
+        assertEquals(OLD_TIME, Files.getLastModifiedTime(stringsXml("values")));
+        assertEquals(OLD_TIME, Files.getLastModifiedTime(stringsXml("values-fr")));
+        assertFalse(OLD_TIME.equals(Files.getLastModifiedTime(stringsXml("values-de"))));
+    }
+
+    @Test
+    public void skippedLocalesAreNotRead() throws IOException {
+        new CsvToStringsXml(builder()).convert();
+
+        // Only the manifest is compared, so a file changed by hand is left as it is
+        byte[] edited = "edited".getBytes(StandardCharsets.UTF_8);
+        Files.write(stringsXml("values-fr"), edited);
+
+        ConversionResult result = new CsvToStringsXml(builder()).convert();
+        assertTrue(result.getUnchangedLocales().contains("fr"));
+        assertArrayEquals(edited, Files.readAllBytes(stringsXml("values-fr")));
+    }
+
+    @Test
+    public void deletedFilesAreWrittenAgain() throws IOException {
+        new CsvToStringsXml(builder()).convert();
+        Files.delete(stringsXml("values-de"));
+
+        ConversionResult result = new CsvToStringsXml(builder()).convert();
+        assertEquals(new HashSet<>(Arrays.asList("de")), result.getWrittenLocales());
+        assertTrue(Files.isRegularFile(stringsXml("values-de")));
+    }
+
+    @Test
+    public void docTypeChangeRewritesEveryLocale() throws IOException {
+        new CsvToStringsXml(builder()).convert();
+        backdateOutput();
+
+        // Not used by any string, but written in each file's header
+        ConversionResult result = new CsvToStringsXml(builder()
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().addItem("appname", "Unused").build())
+        ).convert();
+
+        assertEquals(new HashSet<>(Arrays.asList("en", "de", "fr")), result.getWrittenLocales());
+        assertFalse(OLD_TIME.equals(Files.getLastModifiedTime(stringsXml("values"))));
+    }
+
+    @Test
+    public void encodingChangeRewritesEveryLocale() throws IOException {
+        new CsvToStringsXml(builder()).convert();
+        Files.write(stringsXml("values-fr"), "edited".getBytes(StandardCharsets.UTF_8));
+
+        // The strings are ASCII, so only the declaration differs
+        ConversionResult result = new CsvToStringsXml(builder().setEncoding("ISO-8859-1")).convert();
+
+        assertEquals(new HashSet<>(Arrays.asList("en", "de", "fr")), result.getWrittenLocales());
+        assertTrue(new String(Files.readAllBytes(stringsXml("values-fr")), StandardCharsets.ISO_8859_1).contains("ISO-8859-1"));
+    }
+
+    @Test
+    public void zipOutputIsRejected() {
+        ConversionResult result = new CsvToStringsXml(builder().setZipOutput(true)).convert();
+
+        assertFalse(result.isFinished());
+        assertFalse(outputDir.exists());
+    }
+
+    @Test
+    public void otherSinksGetEveryLocale() {
+        CsvToStringsXml converter = new CsvToStringsXml(builder());
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+
+        converter.convert(spreadsheet.toPath(), null, sink);
+        ConversionResult result = converter.convert(spreadsheet.toPath(), null, sink);
+
+        assertEquals(new HashSet<>(Arrays.asList("en", "de", "fr")), result.getWrittenLocales());
+        assertFalse(new File(outputDir + CsvToStringsXml.MANIFEST_SUFFIX).exists());
+    }
+
+}
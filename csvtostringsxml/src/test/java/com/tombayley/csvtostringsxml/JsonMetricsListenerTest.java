@@ -0,0 +1,86 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class JsonMetricsListenerTest {
+
+    protected static final String SHEET = "Name\ten\tde\nhello\tHello\tHallo\n";
+
+    protected static int countOccurrences(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    protected static CsvToStringsXml.CsvToStringsXmlBuilder builder(ConversionListener listener) {
+        return new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setStringIdColumnTitle("Name")
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().build())
+                .setConversionListener(listener);
+    }
+
+    @Test
+    public void failedRunIsFinishedAndNotCarriedOver() {
+        JsonMetricsListener listener = new JsonMetricsListener(new PrintStream(new ByteArrayOutputStream()));
+        CsvToStringsXml converter = new CsvToStringsXml(builder(listener));
+
+        ConversionResult failed = converter.convert(Paths.get("does/not/exist.tsv"), null, new InMemoryOutputSink());
+        assertFalse(failed.isFinished());
+        assertNotNull("onConversionFinished wasn't called for the failed run", listener.getJson());
+        assertEquals(0, countOccurrences(listener.getJson(), "\"name\":"));
+
+        ConversionResult finished = converter.convert(new StringReader(SHEET), null, new InMemoryOutputSink());
+        assertTrue(finished.isFinished());
+        assertEquals(1, countOccurrences(listener.getJson(), "\"name\":\"" + ConversionListener.STAGE_READ_SPREADSHEET + "\""));
+    }
+
+    // Runs sharing a listener and an executor each get a summary with only their own stages and locales
+    @Test
+    public void concurrentRunsAreKeptApart() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonMetricsListener listener = new JsonMetricsListener(new PrintStream(output, true, "UTF-8"));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            CsvToStringsXml converter = new CsvToStringsXml(builder(listener).setExecutorService(executor));
+            List<Future<Boolean>> runs = new ArrayList<>();
+            ExecutorService callers = Executors.newFixedThreadPool(8);
+            for (int i = 0; i < 40; i++) {
+                runs.add(callers.submit(() -> converter.convert(new StringReader(SHEET), null, new InMemoryOutputSink()).isFinished()));
+            }
+            for (Future<Boolean> run : runs) {
+                assertTrue(run.get());
+            }
+            callers.shutdown();
+        } finally {
+            executor.shutdown();
+        }
+
+        String[] summaries = output.toString("UTF-8").trim().split("\n");
+        assertEquals(40, summaries.length);
+        for (String summary : summaries) {
+            assertEquals(summary, 1, countOccurrences(summary, "\"name\":\"" + ConversionListener.STAGE_READ_SPREADSHEET + "\""));
+            assertEquals(summary, 1, countOccurrences(summary, "\"name\":\"" + ConversionListener.STAGE_SAVE_TRANSLATIONS + "\""));
+            assertTrue(summary, summary.contains("\"locales\":{\"de\":{\"bytes\":"));
+            assertEquals(summary, 2, countOccurrences(summary, "\"bytes\":"));
+        }
+    }
+
+}
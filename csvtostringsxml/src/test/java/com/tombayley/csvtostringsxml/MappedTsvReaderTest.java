@@ -0,0 +1,211 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.RFC4180ParserBuilder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * MappedTsvReader must return the same rows as OpenCSV's RFC4180Parser for every file quoted as
+ * RFC 4180 says, whatever segments the file is mapped in. Other quoting must throw
+ * IrregularQuotingException, so the converter can read the file with OpenCSV instead.
+ */
+public class MappedTsvReaderTest {
+
+    // From segments of 4 bytes, so most rows and many cells cross into the next segment
+    protected static final int[] SEGMENT_SHIFTS = {2, 3, 5, MappedTsvReader.DEFAULT_SEGMENT_SHIFT};
+
+    protected static final String[] PLAIN_PIECES = {"a", "Hello", " ", "\u00e9", "\u4e2d\u6587", "\ud83d\ude00", "%1$s", "'"};
+    protected static final String[] QUOTED_PIECES = {"\t", "\n", "\r\n", "\r", "\"\"", "a", "\u00e9", "\u4e2d", " "};
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected static List<String[]> readWithOpenCsv(String tsv) throws IOException {
+        return new CSVReaderBuilder(new StringReader(tsv))
+                .withCSVParser(new RFC4180ParserBuilder().withSeparator('\t').build())
+                .build()
+                .readAll();
+    }
+
+    protected List<String[]> readMapped(String tsv, int segmentShift) throws IOException {
+        Path path = temporaryFolder.newFile().toPath();
+        Files.write(path, tsv.getBytes(StandardCharsets.UTF_8));
+
+        MappedTsvReader reader = new MappedTsvReader(path, StandardCharsets.UTF_8, segmentShift);
+        try {
+            return reader.readAll();
+        } finally {
+            reader.close();
+        }
+    }
+
+    protected void assertSameRows(String tsv) throws IOException {
+        List<String[]> expected = readWithOpenCsv(tsv);
+        for (int segmentShift : SEGMENT_SHIFTS) {
+            List<String[]> rows = readMapped(tsv, segmentShift);
+            assertEquals(tsv, expected.size(), rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                assertArrayEquals(tsv, expected.get(i), rows.get(i));
+            }
+        }
+    }
+
+    protected void assertIrregular(String tsv) throws IOException {
+        for (int segmentShift : SEGMENT_SHIFTS) {
+            try {
+                readMapped(tsv, segmentShift);
+                fail("Not irregular: " + tsv);
+            } catch (MappedTsvReader.IrregularQuotingException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void quotedCells() throws IOException {
+        assertSameRows("Name\ten\tde\nhello\t\"Hello\tWorld\"\t\"Hallo\"\n");
+        assertSameRows("Name\ten\nquote\t\"Say \"\"hi\"\"\"\nonly_quotes\t\"\"\"\"\"\"\n");
+        assertSameRows("Name\ten\nempty\t\"\"\nlast\t\"\"");
+    }
+
+    @Test
+    public void lineBreaksInQuotedCells() throws IOException {
+        assertSameRows("Name\ten\nlf\t\"One\nTwo\"\ncrlf\t\"One\r\nTwo\"\ncr\t\"One\rTwo\"\n");
+        assertSameRows("Name\ten\nbreaks\t\"\n\n\r\n\"\nafter\tAfter\n");
+    }
+
+    @Test
+    public void lineEndings() throws IOException {
+        assertSameRows("Name\ten\r\nhello\tHello\r\nbye\tBye\r\n");
+        assertSameRows("Name\ten\nhello\tHello");
+        assertSameRows("Name\ten\n\nhello\tHello\n\n");
+        assertSameRows("Name\ten\tde\nshort\tShort\nlong\tLong\tLang\tExtra\n");
+        assertSameRows("Name\ten\nhello\t\t\n");
+    }
+
+    @Test
+    public void byteOrderMark() throws IOException {
+        // Neither reader skips it, so it stays part of the first cell
+        assertSameRows("\ufeffName\ten\nhello\tHello\n");
+        assertIrregular("\ufeff\"Name\"\ten\nhello\tHello\n");
+    }
+
+    @Test
+    public void rowsAcrossSegments() throws IOException {
+        StringBuilder tsv = new StringBuilder("Name\ten\tde\n");
+        for (int i = 0; i < 50; i++) {
+            tsv.append("id_").append(i).append("\t\"\u4e2d\t").append(i).append("\r\n\"\"\"\"\"\t\ud83d\ude00 ").append(i).append('\n');
+        }
+        assertSameRows(tsv.toString());
+    }
+
+    @Test
+    public void irregularQuotingThrows() throws IOException {
+        assertIrregular("Name\ten\nhello\tSay \"hi\"\n");
+        assertIrregular("Name\ten\nhello\t\"Hello\" there\n");
+        assertIrregular("Name\ten\nhello\t\"Hello\n");
+    }
+
+    @Test
+    public void fuzzRegularQuoting() throws IOException {
+        Random random = new Random(4180);
+        for (int i = 0; i < 300; i++) {
+            assertSameRows(randomTsv(random, false));
+        }
+    }
+
+    @Test
+    public void fuzzIrregularQuoting() throws IOException {
+        Random random = new Random(4181);
+        for (int i = 0; i < 300; i++) {
+            String tsv = randomTsv(random, true);
+            List<String[]> expected;
+            try {
+                expected = readWithOpenCsv(tsv);
+            } catch (IOException e) {
+                // OpenCSV can't read it either, so the mapped reader mustn't return rows for it
+                assertIrregular(tsv);
+                continue;
+            }
+
+            // Either the same rows, or a fallback to OpenCSV
+            try {
+                List<String[]> rows = readMapped(tsv, 3);
+                assertEquals(tsv, expected.size(), rows.size());
+                for (int j = 0; j < rows.size(); j++) {
+                    assertArrayEquals(tsv, expected.get(j), rows.get(j));
+                }
+            } catch (MappedTsvReader.IrregularQuotingException e) {
+            }
+        }
+    }
+
+    @Test
+    public void converterFallsBackToOpenCsv() throws IOException {
+        File spreadsheet = temporaryFolder.newFile("sheet.tsv");
+        String tsv = "Name\ten\tde\nhello\tSay \"hi\"\t\"Hallo\"\nbye\t\"Bye\nnow\"\tTsch\u00fcss\n";
+        Files.write(spreadsheet.toPath(), tsv.getBytes(StandardCharsets.UTF_8));
+
+        TranslationTable mapped = createConverter(true).readSpreadsheet(spreadsheet.toPath());
+        TranslationTable openCsv = createConverter(false).readSpreadsheet(spreadsheet.toPath());
+
+        assertEquals(openCsv.getLocaleCodes(), mapped.getLocaleCodes());
+        for (String localeCode : openCsv.getLocaleCodes()) {
+            assertEquals(openCsv.toMap(localeCode), mapped.toMap(localeCode));
+        }
+        assertEquals("Say \"hi\"", mapped.toMap("en").get("hello"));
+    }
+
+    protected static CsvToStringsXml createConverter(boolean memoryMapped) {
+        return new CsvToStringsXml(new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setStringIdColumnTitle("Name")
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().build())
+                .setMemoryMappedSpreadsheet(memoryMapped));
+    }
+
+    // Rows of random cells, quoted as RFC 4180 says unless irregular quotes are wanted
+    protected static String randomTsv(Random random, boolean irregular) {
+        StringBuilder tsv = new StringBuilder();
+        int rowCount = 1 + random.nextInt(6);
+
+        for (int row = 0; row < rowCount; row++) {
+            int cellCount = 1 + random.nextInt(4);
+            for (int cell = 0; cell < cellCount; cell++) {
+                if (cell > 0) tsv.append('\t');
+
+                if (random.nextBoolean()) {
+                    tsv.append('"');
+                    for (int i = random.nextInt(5); i > 0; i--) {
+                        tsv.append(QUOTED_PIECES[random.nextInt(QUOTED_PIECES.length)]);
+                    }
+                    tsv.append('"');
+                } else {
+                    for (int i = random.nextInt(4); i > 0; i--) {
+                        tsv.append(PLAIN_PIECES[random.nextInt(PLAIN_PIECES.length)]);
+                    }
+                }
+
+                if (irregular && random.nextInt(4) == 0) tsv.append('"');
+            }
+
+            if (row < rowCount - 1 || random.nextBoolean()) tsv.append(random.nextBoolean() ? "\n" : "\r\n");
+        }
+        return tsv.toString();
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Each locale is written with its strings from the sheet first, in sheet order, and the strings
+ * merged in from its existing strings.xml after them, in the order they are in the existing file.
+ * This includes strings that are in the sheet but empty for the locale.
+ */
+public class MergeOrderTest {
+
+    protected static final Pattern STRING_NAME = Pattern.compile("<string name=\"([^\"]*)\"");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected static List<String[]> sheet() {
+        return Arrays.asList(
+                new String[]{"Name", "en", "de"},
+                new String[]{"a", "A", ""},
+                new String[]{"b", "B", "B de"},
+                new String[]{"c", "", ""}
+        );
+    }
+
+    protected static HashMap<String, LinkedHashMap<String, String>> existing() {
+        HashMap<String, LinkedHashMap<String, String>> existing = new HashMap<>();
+
+        LinkedHashMap<String, String> en = new LinkedHashMap<>();
+        en.put("x", "X");
+        en.put("c", "C");
+        existing.put("en", en);
+
+        LinkedHashMap<String, String> de = new LinkedHashMap<>();
+        de.put("c", "C de");
+        de.put("y", "Y de");
+        de.put("x", "X de");
+        de.put("a", "A de");
+        existing.put("de", de);
+        return existing;
+    }
+
+    protected static CsvToStringsXml.CsvToStringsXmlBuilder builder() {
+        return new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setStringIdColumnTitle("Name")
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().build());
+    }
+
+    protected static List<String> getStringIds(byte[] stringsXml) {
+        List<String> stringIds = new ArrayList<>();
+        Matcher matcher = STRING_NAME.matcher(new String(stringsXml, StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            stringIds.add(matcher.group(1));
+        }
+        return stringIds;
+    }
+
+    protected void assertOrder(byte[] en, byte[] de) {
+        assertEquals(Arrays.asList("a", "b", "x", "c"), getStringIds(en));
+        assertEquals(Arrays.asList("b", "c", "y", "x", "a"), getStringIds(de));
+    }
+
+    @Test
+    public void mergedStringsComeAfterSheetStrings() {
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+        Iterator<String[]> rows = sheet().iterator();
+        new CsvToStringsXml(builder()).convert(rows, existing(), sink);
+
+        assertOrder(sink.getBytes("en"), sink.getBytes("de"));
+    }
+
+    @Test
+    public void offHeapKeepsOrder() {
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+        Iterator<String[]> rows = sheet().iterator();
+        new CsvToStringsXml(builder().setOffHeapTranslations(true)).convert(rows, existing(), sink);
+
+        assertOrder(sink.getBytes("en"), sink.getBytes("de"));
+    }
+
+    @Test
+    public void streamingMergeKeepsOrder() throws IOException {
+        // Spreadsheet files are always read as TSV
+        File spreadsheet = temporaryFolder.newFile("sheet.tsv");
+        StringBuilder tsv = new StringBuilder();
+        for (String[] row : sheet()) {
+            tsv.append(String.join("\t", row)).append('\n');
+        }
+        Files.write(spreadsheet.toPath(), tsv.toString().getBytes(StandardCharsets.UTF_8));
+
+        File resDir = temporaryFolder.newFolder("res");
+        writeStringsXml(new File(resDir, "values"), existing().get("en"));
+        writeStringsXml(new File(resDir, "values-de"), existing().get("de"));
+
+        File outputDir = new File(temporaryFolder.getRoot(), "out");
+        new CsvToStringsXml(builder()
+                .setSpreadsheetPath(spreadsheet.getPath())
+                .setExistingResourcesDirPath(resDir.getPath())
+                .setOutputPath(outputDir.getPath())
+                .setStreamingMerge(true)
+        ).convert();
+
+        assertOrder(
+                Files.readAllBytes(new File(outputDir, "values/strings.xml").toPath()),
+                Files.readAllBytes(new File(outputDir, "values-de/strings.xml").toPath())
+        );
+    }
+
+    protected static void writeStringsXml(File valuesDir, LinkedHashMap<String, String> strings) throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n");
+        for (String stringId : strings.keySet()) {
+            xml.append("    <string name=\"").append(stringId).append("\">").append(strings.get(stringId)).append("</string>\n");
+        }
+        xml.append("</resources>\n");
+
+        valuesDir.mkdirs();
+        Files.write(new File(valuesDir, "strings.xml").toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.junit.Test;
+
+/**
+ * With off-heap translations, every cell is encoded to UTF-8 outside the heap as it is read or
+ * merged, so the sheet is never held as Strings, and the files written are the same as without.
+ */
+public class OffHeapTranslationsTest {
+
+    protected static final String[] LOCALE_CODES = {"en", "de", "fr", "ja"};
+    protected static final int ROW_COUNT = 20_000;
+    // Not Latin-1, so each String takes two bytes a char
+    protected static final String TEXT = "Text \u4e2d\u6587 & 'quoted' %1$s ";
+
+    // Rows made as they are read, so the sheet itself isn't kept on the heap
+    protected static Iterator<String[]> sheet() {
+        return new Iterator<String[]>() {
+            int row = -1;
+
+            @Override
+            public boolean hasNext() {
+                return row < ROW_COUNT;
+            }
+
+            @Override
+            public String[] next() {
+                String[] cells = new String[LOCALE_CODES.length + 1];
+                if (row < 0) {
+                    cells[0] = "Name";
+                    System.arraycopy(LOCALE_CODES, 0, cells, 1, LOCALE_CODES.length);
+                } else {
+                    cells[0] = "string_" + row;
+                    for (int col = 1; col < cells.length; col++) {
+                        // Some cells missing, as they are in real sheets
+                        if ((row + col) % 10 == 0) continue;
+
+                        StringBuilder text = new StringBuilder(LOCALE_CODES[col - 1]).append(row);
+                        for (int i = 0; i < 4; i++) {
+                            text.append(TEXT);
+                        }
+                        cells[col] = text.toString();
+                    }
+                }
+                row++;
+                return cells;
+            }
+        };
+    }
+
+    protected static HashMap<String, LinkedHashMap<String, String>> existing() {
+        HashMap<String, LinkedHashMap<String, String>> existing = new HashMap<>();
+        existing.put("de", ResDirsTest.strings("string_0", "Nicht \u00fcberschrieben", "string_9", "Gemerged", "old", "Alt"));
+        return existing;
+    }
+
+    protected static CsvToStringsXml.CsvToStringsXmlBuilder builder(boolean offHeap) {
+        return new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setStringIdColumnTitle("Name")
+                .setOffHeapTranslations(offHeap)
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().build());
+    }
+
+    protected static long getUsedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    // Most heap held after reading, merging and fixing the translations, above what was held before the run
+    protected static long convertAndMeasure(boolean offHeap, InMemoryOutputSink sink) {
+        long[] heap = new long[2];
+        ConversionListener listener = new ConversionListener() {
+            @Override
+            public void onConversionStarted(ConversionRun run) {
+                heap[0] = getUsedHeap();
+            }
+
+            @Override
+            public void onStageFinished(ConversionRun run, String stage, long durationNanos, long items, long allocatedBytes) {
+                if (stage.equals(STAGE_READ_SPREADSHEET) || stage.equals(STAGE_MERGE_EXISTING_RESOURCES)
+                        || stage.equals(STAGE_FIX_TRANSLATIONS)) {
+                    heap[1] = Math.max(heap[1], getUsedHeap());
+                }
+            }
+        };
+
+        ConversionResult result = new CsvToStringsXml(builder(offHeap).setConversionListener(listener))
+                .convert(sheet(), existing(), sink);
+        assertTrue(result.isFinished());
+        return heap[1] - heap[0];
+    }
+
+    @Test
+    public void tableIsOffHeapFromTheStart() {
+        CsvToStringsXml converter = new CsvToStringsXml(builder(true));
+        TranslationTable table = converter.convertCsvRowsToTable(sheet());
+
+        assertTrue(table.isOffHeap());
+        assertEquals(ROW_COUNT, table.getRowCount());
+        for (String localeCode : LOCALE_CODES) {
+            assertNull(table.getColumn(localeCode));
+            assertNotNull(table.getUtf8Column(localeCode));
+        }
+        assertEquals("en0" + TEXT + TEXT + TEXT + TEXT, table.get("en", 0));
+        assertNull(table.get("ja", 6));
+
+        // Merged and fixed strings stay off the heap
+        table.set("de", table.addStringId("new"), "Neu");
+        assertEquals("Neu", table.get("de", table.getRow("new")));
+        assertNull(table.getColumn("de"));
+    }
+
+    @Test
+    public void offHeapTableTakesLittleHeap() {
+        InMemoryOutputSink offHeapSink = new InMemoryOutputSink();
+        long offHeapBytes = convertAndMeasure(true, offHeapSink);
+        InMemoryOutputSink onHeapSink = new InMemoryOutputSink();
+        long onHeapBytes = convertAndMeasure(false, onHeapSink);
+
+        // Around 70,000 Strings of about 100 chars, so about 20 MB on the heap
+        assertTrue("On the heap: " + onHeapBytes, onHeapBytes > 10_000_000);
+        // Only string ids and row addresses are left on the heap
+        assertTrue("Off the heap: " + offHeapBytes + ", on the heap: " + onHeapBytes, offHeapBytes < onHeapBytes / 4);
+
+        assertEquals(onHeapSink.getFiles().keySet(), offHeapSink.getFiles().keySet());
+        for (String localeCode : LOCALE_CODES) {
+            assertArrayEquals(localeCode, onHeapSink.getBytes(localeCode), offHeapSink.getBytes(localeCode));
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Reading the spreadsheet in chunks on several threads must give the same table as reading it in
+ * one go, however small the chunks, even when a quoted cell holds line breaks and lines that look
+ * like rows of their own.
+ */
+public class ParallelSpreadsheetTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected File spreadsheet;
+    protected ExecutorService executorService;
+
+    @Before
+    public void setUp() throws IOException {
+        StringBuilder tsv = new StringBuilder("Name\ten\tde\tComment\n");
+        for (int i = 0; i < 40; i++) {
+            switch (i % 4) {
+                case 0:
+                    tsv.append("plain_").append(i).append("\tPlain ").append(i).append("\tEinfach\t\n");
+                    break;
+                case 1:
+                    // Looks like rows of its own to anything that doesn't track quotes
+                    tsv.append("multi_").append(i).append("\t\"One\nfake_").append(i).append("\tFake\tRow\nTwo\"\t\"Zwei\r\nDrei\"\tNote\n");
+                    break;
+                case 2:
+                    tsv.append("quotes_").append(i).append("\t\"Say \"\"hi\"\"\n\"\t\"\n\n\"\t\"\t\"\r\n");
+                    break;
+                default:
+                    tsv.append("wide_").append(i).append("\t\u4e2d\u6587 ").append(i).append("\t\u00fc\u00f6\n");
+            }
+        }
+
+        spreadsheet = temporaryFolder.newFile("sheet.tsv");
+        Files.write(spreadsheet.toPath(), tsv.toString().getBytes(StandardCharsets.UTF_8));
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    protected CsvToStringsXml.CsvToStringsXmlBuilder builder() {
+        return new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setStringIdColumnTitle("Name")
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().build());
+    }
+
+    // Reads in parallel, in chunks of at least minChunkSize bytes
+    protected CsvToStringsXml createParallelConverter(long minChunkSize) {
+        return new CsvToStringsXml(builder().setParallelSpreadsheet(true).setExecutorService(executorService)) {
+            @Override
+            protected long getMinSpreadsheetChunkSize() {
+                return minChunkSize;
+            }
+        };
+    }
+
+    protected static List<String> getStringIds(TranslationTable table) {
+        List<String> stringIds = new ArrayList<>();
+        for (int row = 0; row < table.getRowCount(); row++) {
+            stringIds.add(table.getStringId(row));
+        }
+        return stringIds;
+    }
+
+    protected static void assertSameTable(TranslationTable expected, TranslationTable table) {
+        assertEquals(getStringIds(expected), getStringIds(table));
+        assertEquals(expected.getLocaleCodes(), table.getLocaleCodes());
+        for (String localeCode : expected.getLocaleCodes()) {
+            LinkedHashMap<String, String> strings = table.toMap(localeCode);
+            assertEquals(expected.toMap(localeCode), strings);
+            assertEquals(new ArrayList<>(expected.toMap(localeCode).keySet()), new ArrayList<>(strings.keySet()));
+        }
+    }
+
+    @Test
+    public void chunksMatchSequentialRead() throws IOException {
+        TranslationTable sequential = new CsvToStringsXml(builder()).readSpreadsheet(spreadsheet.toPath());
+        assertEquals(40, sequential.getRowCount());
+        assertTrue(sequential.toMap("en").get("multi_1").contains("\tFake\tRow\n"));
+
+        long length = spreadsheet.length();
+        // A byte per chunk puts a chunk start inside nearly every quoted line break
+        for (long chunkSize : new long[]{1, 2, 3, 7, 16, 61, 200, length / 2, length}) {
+            TranslationTable parallel = createParallelConverter(chunkSize).readSpreadsheet(spreadsheet.toPath());
+            assertSameTable(sequential, parallel);
+        }
+    }
+
+    @Test
+    public void chunkStartsAreRowStarts() throws IOException {
+        byte[] bytes = Files.readAllBytes(spreadsheet.toPath());
+        List<String[]> rows = new CsvToStringsXml(builder()).readCsv(new StringReader(new String(bytes, StandardCharsets.UTF_8)));
+
+        MappedTsvReader reader = new MappedTsvReader(spreadsheet.toPath(), StandardCharsets.UTF_8);
+        try {
+            reader.readNext();
+            long[] chunkStarts = reader.findChunkStarts(1);
+            assertEquals(reader.getPosition(), chunkStarts[0]);
+            assertEquals(bytes.length, chunkStarts[chunkStarts.length - 1]);
+
+            // Every row after the header gets a chunk of its own
+            assertEquals(rows.size() - 1, chunkStarts.length - 1);
+            for (int i = 0; i < chunkStarts.length - 1; i++) {
+                List<String[]> chunk = reader.slice(chunkStarts[i], chunkStarts[i + 1]).readAll();
+                assertEquals(1, chunk.size());
+                assertEquals(rows.get(i + 1)[0], chunk.get(0)[0]);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+}
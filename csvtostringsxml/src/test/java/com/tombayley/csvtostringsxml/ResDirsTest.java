@@ -0,0 +1,152 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Existing strings are read from every values* directory of each res directory. Res directories
+ * are merged in the order they were added, the first one's text winning, and values* directories
+ * are read in sorted order whatever order the file system lists them in.
+ */
+public class ResDirsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected File firstResDir;
+    protected File secondResDir;
+
+    protected final CsvToStringsXml converter = new CsvToStringsXml(new CsvToStringsXml.CsvToStringsXmlBuilder()
+            .setStringIdColumnTitle("Name")
+            .setDocType(new CsvToStringsXml.DocTypeBuilder().build()));
+
+    @Before
+    public void setUp() throws IOException {
+        firstResDir = temporaryFolder.newFolder("first");
+        MergeOrderTest.writeStringsXml(new File(firstResDir, "values"), strings("a", "A first", "b", "B first"));
+        MergeOrderTest.writeStringsXml(new File(firstResDir, "values-de"), strings("a", "A de first"));
+
+        secondResDir = temporaryFolder.newFolder("second");
+        MergeOrderTest.writeStringsXml(new File(secondResDir, "values"), strings("c", "C second", "b", "B second"));
+        MergeOrderTest.writeStringsXml(new File(secondResDir, "values-de"), strings("d", "D de second", "a", "A de second"));
+        MergeOrderTest.writeStringsXml(new File(secondResDir, "values-fr"), strings("a", "A fr second"));
+    }
+
+    protected static LinkedHashMap<String, String> strings(String... idsAndTexts) {
+        LinkedHashMap<String, String> strings = new LinkedHashMap<>();
+        for (int i = 0; i < idsAndTexts.length; i += 2) {
+            strings.put(idsAndTexts[i], idsAndTexts[i + 1]);
+        }
+        return strings;
+    }
+
+    protected HashMap<String, LinkedHashMap<String, String>> read(File... resDirs) throws IOException, XMLStreamException {
+        List<Path> paths = new ArrayList<>();
+        for (File resDir : resDirs) {
+            paths.add(resDir.toPath());
+        }
+        return converter.readResStringFiles(paths, null);
+    }
+
+    @Test
+    public void earlierResDirsWin() throws IOException, XMLStreamException {
+        HashMap<String, LinkedHashMap<String, String>> translations = read(firstResDir, secondResDir);
+
+        // Strings only in a later directory come after, in their file order
+        assertEquals(strings("a", "A first", "b", "B first", "c", "C second"), translations.get("en"));
+        assertEquals(new ArrayList<>(Arrays.asList("a", "b", "c")), new ArrayList<>(translations.get("en").keySet()));
+        assertEquals(strings("a", "A de first", "d", "D de second"), translations.get("de"));
+        assertEquals(strings("a", "A fr second"), translations.get("fr"));
+    }
+
+    @Test
+    public void orderOfResDirsDecides() throws IOException, XMLStreamException {
+        HashMap<String, LinkedHashMap<String, String>> translations = read(secondResDir, firstResDir);
+
+        assertEquals(strings("c", "C second", "b", "B second", "a", "A first"), translations.get("en"));
+        assertEquals(new ArrayList<>(Arrays.asList("c", "b", "a")), new ArrayList<>(translations.get("en").keySet()));
+        assertEquals(strings("d", "D de second", "a", "A de second"), translations.get("de"));
+    }
+
+    @Test
+    public void onlyGivenLocalesAreRead() throws IOException, XMLStreamException {
+        HashMap<String, LinkedHashMap<String, String>> translations = converter.readResStringFiles(
+                Arrays.asList(firstResDir.toPath(), secondResDir.toPath()), Collections.singleton("de"));
+
+        assertEquals(Collections.singleton("de"), translations.keySet());
+    }
+
+    @Test
+    public void valuesDirsAreSorted() throws IOException {
+        File resDir = temporaryFolder.newFolder("sorted");
+        for (String name : new String[]{"values-zh", "values-b+sr+Latn", "values", "values-de", "values-night", "drawable"}) {
+            new File(resDir, name).mkdirs();
+        }
+        // Files named like values directories aren't listed
+        Files.write(new File(resDir, "values-file").toPath(), new byte[0]);
+
+        List<String> names = new ArrayList<>();
+        for (Path valuesDir : converter.listValuesDirs(resDir.toPath())) {
+            names.add(valuesDir.getFileName().toString());
+        }
+        assertEquals(Arrays.asList("values", "values-b+sr+Latn", "values-de", "values-night", "values-zh"), names);
+    }
+
+    @Test
+    public void dirsWithoutStringsXmlAreSkipped() throws IOException {
+        new File(firstResDir, "values-night").mkdirs();
+        Files.write(new File(firstResDir, "values-night/colors.xml").toPath(), "<resources/>".getBytes(StandardCharsets.UTF_8));
+
+        LinkedHashMap<String, List<Path>> files = converter.listStringsXmlFiles(
+                Arrays.asList(firstResDir.toPath(), secondResDir.toPath()), null);
+
+        assertEquals(Arrays.asList("en", "de", "fr"), new ArrayList<>(files.keySet()));
+        assertEquals(Arrays.asList(
+                firstResDir.toPath().resolve("values-de/strings.xml"),
+                secondResDir.toPath().resolve("values-de/strings.xml")
+        ), files.get("de"));
+    }
+
+    @Test
+    public void conversionMergesResDirsInOrder() throws IOException {
+        File spreadsheet = temporaryFolder.newFile("sheet.tsv");
+        Files.write(spreadsheet.toPath(), "Name\ten\tde\ne\tE\tE de\nd\tD\t\n".getBytes(StandardCharsets.UTF_8));
+        File outputDir = new File(temporaryFolder.getRoot(), "out");
+
+        new CsvToStringsXml(new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setSpreadsheetPath(spreadsheet.getPath())
+                .setOutputPath(outputDir.getPath())
+                .setStringIdColumnTitle("Name")
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().build())
+                .addExistingResourcesDirPath(firstResDir.getPath())
+                .addExistingResourcesDirPath(secondResDir.getPath())
+        ).convert();
+
+        String de = new String(Files.readAllBytes(new File(outputDir, "values-de/strings.xml").toPath()), StandardCharsets.UTF_8);
+        // Merged strings follow the sheet's, the first res directory's first
+        assertEquals(Arrays.asList("e", "a", "d"), MergeOrderTest.getStringIds(de.getBytes(StandardCharsets.UTF_8)));
+        assertTrue(de.contains(">A de first<"));
+        assertFalse(de.contains("A de second"));
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResourceCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected static void writeStringsXml(Path file, String text) throws IOException {
+        String xml = "<resources><string name=\"greeting\">" + text + "</string></resources>";
+        Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected static LinkedHashMap<String, String> strings(String text) {
+        LinkedHashMap<String, String> strings = new LinkedHashMap<>();
+        strings.put("greeting", text);
+        return strings;
+    }
+
+    @Test
+    public void unchangedFileIsLoadedFromItsEntry() throws IOException, XMLStreamException {
+        File cacheDir = temporaryFolder.newFolder();
+        Path file = temporaryFolder.newFile("strings.xml").toPath();
+        writeStringsXml(file, "Hello");
+
+        assertEquals(strings("Hello"), new ResourceCache(cacheDir.toPath(), Long.MAX_VALUE, "UTF-8").get(file));
+        assertEquals(1, cacheDir.list().length);
+        assertEquals(strings("Hello"), new ResourceCache(cacheDir.toPath(), Long.MAX_VALUE, "UTF-8").get(file));
+    }
+
+    // Size and modified time alone can't tell the file changed
+    @Test
+    public void changeWithSameSizeAndModifiedTimeIsSeen() throws IOException, XMLStreamException {
+        File cacheDir = temporaryFolder.newFolder();
+        Path file = temporaryFolder.newFile("strings.xml").toPath();
+        writeStringsXml(file, "Hello");
+        FileTime lastModified = Files.getLastModifiedTime(file);
+
+        ResourceCache cache = new ResourceCache(cacheDir.toPath(), Long.MAX_VALUE, "UTF-8");
+        assertEquals(strings("Hello"), cache.get(file));
+
+        writeStringsXml(file, "Hallo");
+        Files.setLastModifiedTime(file, lastModified);
+        // Same length as "Hello"
+        assertEquals(61, Files.size(file));
+
+        assertEquals(strings("Hallo"), cache.get(file));
+        assertEquals(strings("Hallo"), new ResourceCache(cacheDir.toPath(), Long.MAX_VALUE, "UTF-8").get(file));
+    }
+
+}
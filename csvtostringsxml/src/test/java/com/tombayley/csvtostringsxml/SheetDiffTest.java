@@ -0,0 +1,150 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A diff lists the strings added, removed and changed in each locale. Compared with a res
+ * directory, only strings a conversion would write differently count, so converting just the
+ * changed locales leaves nothing more to change.
+ */
+public class SheetDiffTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected File spreadsheet;
+    protected File oldResDir;
+    protected File outputDir;
+
+    @Before
+    public void setUp() throws IOException {
+        spreadsheet = temporaryFolder.newFile("sheet.tsv");
+        writeSheet(spreadsheet,
+                "Name\ten\tde",
+                "hello\tHello &appname;\tHallo",
+                "quote\tIt's here\tEs ist's",
+                "empty\tEmpty\t"
+        );
+
+        oldResDir = temporaryFolder.newFolder("old_res");
+        MergeOrderTest.writeStringsXml(new File(oldResDir, "values"), ResDirsTest.strings("quote", "It\\'s here"));
+        MergeOrderTest.writeStringsXml(new File(oldResDir, "values-de"), ResDirsTest.strings(
+                "old", "Alt",
+                "hello", "Hallo alt",
+                "empty", "Leer"
+        ));
+
+        outputDir = new File(temporaryFolder.getRoot(), "out");
+    }
+
+    protected static void writeSheet(File file, String... lines) throws IOException {
+        Files.write(file.toPath(), (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected CsvToStringsXml createConverter() {
+        return new CsvToStringsXml(new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setSpreadsheetPath(spreadsheet.getPath())
+                .setExistingResourcesDirPath(oldResDir.getPath())
+                .setOutputPath(outputDir.getPath())
+                .setStringIdColumnTitle("Name")
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().addItem("appname", "My App").build()));
+    }
+
+    @Test
+    public void diffListsChangesPerLocale() throws IOException {
+        Path previous = temporaryFolder.newFile("previous.tsv").toPath();
+        writeSheet(previous.toFile(),
+                "Name\ten\tde",
+                "same\tSame\tGleich",
+                "changed\tChanged\tGe\u00e4ndert",
+                "emptied\tEmptied\tGeleert",
+                "filled\tFilled\t",
+                "gone\tGone\tWeg"
+        );
+        writeSheet(spreadsheet,
+                "Name\ten\tde\tfr",
+                "new\tNew\t\tNouveau",
+                "same\tSame\tGleich\t",
+                "changed\tChanged\tNeu ge\u00e4ndert\t",
+                "emptied\tEmptied\t\t",
+                "filled\tFilled\tGef\u00fcllt\t"
+        );
+
+        SheetDiff diff = createConverter().diff(previous);
+
+        assertEquals(new HashSet<>(Arrays.asList("de", "en", "fr")), diff.getChangedLocales());
+
+        assertEquals(Collections.singletonList("new"), diff.getAddedStringIds("en"));
+        assertEquals(Collections.singletonList("gone"), diff.getRemovedStringIds("en"));
+        assertEquals(Collections.emptyList(), diff.getChangedStringIds("en"));
+
+        assertEquals(Collections.singletonList("filled"), diff.getAddedStringIds("de"));
+        assertEquals(Arrays.asList("emptied", "gone"), diff.getRemovedStringIds("de"));
+        assertEquals(Collections.singletonList("changed"), diff.getChangedStringIds("de"));
+
+        // A new locale has every string it has text for added
+        assertEquals(Collections.singletonList("new"), diff.getAddedStringIds("fr"));
+        assertEquals(Collections.emptyList(), diff.getRemovedStringIds("fr"));
+
+        assertEquals(Collections.emptyList(), diff.getAddedStringIds("es"));
+        assertTrue(diff.toString().startsWith("de: 1 added, 2 removed, 1 changed\n  + filled\n  - emptied\n  - gone\n  ~ changed"));
+        assertTrue(createConverter().diff(spreadsheet.toPath()).isEmpty());
+    }
+
+    @Test
+    public void resOnlyStringsArentRemoved() throws IOException, XMLStreamException {
+        SheetDiff diff = createConverter().diffWithResources(oldResDir.toPath());
+
+        // "old" is only in the res directory and "empty" is empty in the sheet, so both are merged as they are
+        assertEquals(Collections.emptyList(), diff.getRemovedStringIds("de"));
+        assertEquals(Collections.singletonList("quote"), diff.getAddedStringIds("de"));
+        assertEquals(Collections.singletonList("hello"), diff.getChangedStringIds("de"));
+
+        // The quote is the same once fixed
+        assertEquals(Arrays.asList("hello", "empty"), diff.getAddedStringIds("en"));
+        assertEquals(Collections.emptyList(), diff.getChangedStringIds("en"));
+        assertEquals(new HashSet<>(Arrays.asList("de", "en")), diff.getChangedLocales());
+    }
+
+    @Test
+    public void convertingChangedLocalesLeavesNoChanges() throws IOException, XMLStreamException {
+        CsvToStringsXml converter = createConverter();
+        assertTrue(converter.convert().isFinished());
+
+        // Escaped text and merged strings read back from the output are the same as the sheet's
+        SheetDiff unchanged = converter.diffWithResources(outputDir.toPath());
+        assertTrue(unchanged.toString(), unchanged.isEmpty());
+
+        writeSheet(spreadsheet,
+                "Name\ten\tde",
+                "hello\tHello &appname;\tHallo neu",
+                "quote\tIt's here\tEs ist's",
+                "empty\tEmpty\t"
+        );
+        SheetDiff diff = converter.diffWithResources(outputDir.toPath());
+        assertEquals(Collections.singleton("de"), diff.getChangedLocales());
+        assertEquals(Collections.singletonList("hello"), diff.getChangedStringIds("de"));
+
+        ConversionResult result = converter.convert(diff.getChangedLocales());
+        assertEquals(Collections.singleton("de"), result.getWrittenLocales());
+        assertTrue(converter.diffWithResources(outputDir.toPath()).isEmpty());
+    }
+
+}
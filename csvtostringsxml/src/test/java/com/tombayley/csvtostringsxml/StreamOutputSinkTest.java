@@ -0,0 +1,115 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * StreamOutputSink opens one stream per locale, writes exactly that locale's file to it and
+ * closes it, even when the write fails.
+ */
+public class StreamOutputSinkTest {
+
+    // A stream per opened file, noting whether it was closed
+    protected static class OpenedStream extends ByteArrayOutputStream {
+        final String localeCode;
+        final String path;
+        boolean isClosed = false;
+
+        OpenedStream(String localeCode, String path) {
+            this.localeCode = localeCode;
+            this.path = path;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (isClosed) fail("Closed twice: " + path);
+            isClosed = true;
+            super.close();
+        }
+    }
+
+    @Test
+    public void eachFileGetsItsOwnStream() throws IOException {
+        List<OpenedStream> streams = Collections.synchronizedList(new ArrayList<>());
+        StreamOutputSink sink = new StreamOutputSink((localeCode, path) -> {
+            OpenedStream stream = new OpenedStream(localeCode, path);
+            streams.add(stream);
+            return stream;
+        });
+
+        assertTrue(sink.write("en", "values/strings.xml", new byte[]{'a', 'b'}));
+        assertTrue(sink.write("de", "values-de/strings.xml", new byte[0]));
+
+        assertEquals(2, streams.size());
+        assertEquals("en", streams.get(0).localeCode);
+        assertEquals("values/strings.xml", streams.get(0).path);
+        assertArrayEquals(new byte[]{'a', 'b'}, streams.get(0).toByteArray());
+        assertEquals("values-de/strings.xml", streams.get(1).path);
+        assertEquals(0, streams.get(1).size());
+        assertTrue(streams.get(0).isClosed);
+        assertTrue(streams.get(1).isClosed);
+    }
+
+    @Test
+    public void streamIsClosedWhenWriteFails() {
+        OpenedStream[] opened = new OpenedStream[1];
+        StreamOutputSink sink = new StreamOutputSink((localeCode, path) -> {
+            opened[0] = new OpenedStream(localeCode, path) {
+                @Override
+                public void write(byte[] bytes) throws IOException {
+                    throw new IOException("Upload failed");
+                }
+            };
+            return opened[0];
+        });
+
+        try {
+            sink.write("en", "values/strings.xml", new byte[]{'a'});
+            fail("Write didn't fail");
+        } catch (IOException e) {
+            assertEquals("Upload failed", e.getMessage());
+        }
+        assertTrue(opened[0].isClosed);
+    }
+
+    @Test
+    public void conversionMatchesInMemorySink() {
+        String tsv = "Name\ten\tde\tfr\nhello\tHello\tHallo\tBonjour\n";
+        CsvToStringsXml converter = new CsvToStringsXml(new CsvToStringsXml.CsvToStringsXmlBuilder()
+                .setStringIdColumnTitle("Name")
+                .setDocType(new CsvToStringsXml.DocTypeBuilder().build()));
+
+        InMemoryOutputSink inMemory = new InMemoryOutputSink();
+        converter.convert(new StringReader(tsv), null, inMemory);
+
+        Map<String, OpenedStream> streams = Collections.synchronizedMap(new TreeMap<>());
+        ConversionResult result = converter.convert(new StringReader(tsv), null, new StreamOutputSink((localeCode, path) -> {
+            OpenedStream stream = new OpenedStream(localeCode, path);
+            if (streams.put(localeCode, stream) != null) fail("Opened twice: " + localeCode);
+            return stream;
+        }));
+
+        assertEquals(inMemory.getFiles().keySet(), streams.keySet());
+        assertEquals(streams.keySet(), result.getWrittenLocales());
+        for (OpenedStream stream : streams.values()) {
+            assertEquals(inMemory.getPath(stream.localeCode), stream.path);
+            assertArrayEquals(inMemory.getBytes(stream.localeCode), stream.toByteArray());
+            assertTrue(stream.isClosed);
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+/**
+ * StringsXmlReader took the place of reading strings.xml files into a DOM, and must keep the same
+ * strings with the same text.
+ */
+public class StringsXmlReaderTest {
+
+    protected static final String XML = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<!DOCTYPE resources [\n"
+            + "    <!ENTITY appname \"My App\">\n"
+            + "]>\n"
+            + "<resources>\n"
+            + "    <string name=\"app_name\" translatable=\"false\">&appname;</string>\n"
+            + "    <string name=\"title\">Welcome to &appname;</string>\n"
+            + "    <plurals name=\"songs\">\n"
+            + "        <item quantity=\"one\">One song</item>\n"
+            + "        <item quantity=\"other\">%d songs</item>\n"
+            + "    </plurals>\n"
+            + "    <string name=\"after_plurals\">After plurals</string>\n"
+            + "    <string-array name=\"planets\">\n"
+            + "        <item>Mercury</item>\n"
+            + "    </string-array>\n"
+            + "    <string name=\"styled\">Hello <b>bold <i>and</i></b> plain</string>\n"
+            + "    <string name=\"internal\" translatable=\"false\">Internal</string>\n"
+            + "    <string name=\"escaped\">Tom &amp; Jerry &lt;3</string>\n"
+            + "    <string name=\"cdata\"><![CDATA[<b>raw</b>]]> text</string>\n"
+            + "    <string name=\"empty\"/>\n"
+            + "    <string name=\"translatable\" translatable=\"true\">Kept</string>\n"
+            + "</resources>\n";
+
+    protected static LinkedHashMap<String, String> expected() {
+        LinkedHashMap<String, String> expected = new LinkedHashMap<>();
+        expected.put("title", "Welcome to My App");
+        expected.put("after_plurals", "After plurals");
+        expected.put("styled", "Hello bold and plain");
+        expected.put("escaped", "Tom & Jerry <3");
+        expected.put("cdata", "<b>raw</b> text");
+        expected.put("empty", "");
+        expected.put("translatable", "Kept");
+        return expected;
+    }
+
+    // What the DOM reader kept: the text content of every string not marked translatable="false"
+    protected static LinkedHashMap<String, String> readWithDom(String xml) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+        LinkedHashMap<String, String> strings = new LinkedHashMap<>();
+
+        NodeList nodeList = doc.getElementsByTagName("string");
+        for (int i = 0; i < nodeList.getLength(); i++) {
+            Element element = (Element) nodeList.item(i);
+            if (element.getAttribute("translatable").equals("false")) continue;
+            strings.put(element.getAttribute("name"), element.getTextContent());
+        }
+        return strings;
+    }
+
+    @Test
+    public void readsTranslatableStrings() throws Exception {
+        LinkedHashMap<String, String> strings = new StringsXmlReader(new StringReader(XML)).readStrings();
+
+        assertEquals(expected(), strings);
+        // In file order
+        assertEquals(new ArrayList<>(expected().keySet()), new ArrayList<>(strings.keySet()));
+    }
+
+    @Test
+    public void matchesDomReader() throws Exception {
+        assertEquals(readWithDom(XML), new StringsXmlReader(new StringReader(XML)).readStrings());
+    }
+
+    @Test
+    public void readsIdsAfterSkippedElements() throws Exception {
+        List<String> stringIds = new ArrayList<>();
+        new StringsXmlReader(new StringReader(XML)).readStringIds(stringIds::add);
+
+        assertEquals(new ArrayList<>(expected().keySet()), stringIds);
+    }
+
+    @Test
+    public void filterSkipsStrings() throws Exception {
+        LinkedHashMap<String, String> strings = new StringsXmlReader(
+                new StringReader(XML), stringId -> !stringId.equals("styled") && !stringId.equals("empty")
+        ).readStrings();
+
+        LinkedHashMap<String, String> expected = expected();
+        expected.remove("styled");
+        expected.remove("empty");
+        assertEquals(expected, strings);
+
+        List<String> stringIds = new ArrayList<>();
+        new StringsXmlReader(new StringReader(XML), stringId -> stringId.startsWith("e")).readStringIds(stringIds::add);
+        assertEquals(Arrays.asList("escaped", "empty"), stringIds);
+    }
+
+    @Test
+    public void repeatedIdsArePassedInFileOrder() throws Exception {
+        String xml = "<resources>\n"
+                + "    <string name=\"a\">First</string>\n"
+                + "    <string name=\"b\">B</string>\n"
+                + "    <string name=\"a\">Second</string>\n"
+                + "</resources>\n";
+
+        List<String> texts = new ArrayList<>();
+        new StringsXmlReader(new StringReader(xml)).readStrings((stringId, text) -> texts.add(stringId + "=" + text));
+        assertEquals(Arrays.asList("a=First", "b=B", "a=Second"), texts);
+
+        // Into a map the last one wins, as it did with the DOM reader
+        assertEquals("Second", new StringsXmlReader(new StringReader(xml)).readStrings().get("a"));
+        assertEquals(readWithDom(xml), new StringsXmlReader(new StringReader(xml)).readStrings());
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Utf8ColumnTest {
+
+    // Chars of every UTF-8 length, with paired and unpaired surrogates
+    protected static final String[] PIECES = {"a", "\u00e9", "\u4e2d", "\ud83d\ude00", "\ud83d", "\ude00", "&", "\n"};
+
+    protected static String[] randomColumn(Random random, int rowCount, int maxPieces) {
+        String[] column = new String[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            if (random.nextInt(5) == 0) continue;
+
+            StringBuilder text = new StringBuilder();
+            int pieces = random.nextInt(maxPieces);
+            for (int i = 0; i < pieces; i++) {
+                text.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            column[row] = text.toString();
+        }
+        return column;
+    }
+
+    protected static long countBytes(String[] column) {
+        long bytes = 0;
+        for (String text : column) {
+            if (text != null) bytes += Utf8Column.LENGTH_SIZE + text.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return bytes;
+    }
+
+    @Test
+    public void bytesMatchGetBytes() throws IOException {
+        Random random = new Random(3);
+        String[] column = randomColumn(random, 2000, 30);
+        Utf8Column utf8Column = Utf8Column.encode(column, column.length);
+
+        byte[] scratch = new byte[4];
+        for (int row = 0; row < column.length; row++) {
+            if (column[row] == null) {
+                assertFalse(utf8Column.has(row));
+                assertNull(utf8Column.getString(row));
+                continue;
+            }
+
+            byte[] expected = column[row].getBytes(StandardCharsets.UTF_8);
+            assertTrue(utf8Column.has(row));
+            assertEquals(expected.length, utf8Column.getLength(row));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            scratch = utf8Column.writeTo(row, out, scratch);
+            assertArrayEquals(expected, out.toByteArray());
+            assertEquals(new String(expected, StandardCharsets.UTF_8), utf8Column.getString(row));
+        }
+    }
+
+    // A column smaller than a chunk gets exactly the bytes it needs
+    @Test
+    public void smallColumnTakesOnlyItsBytes() {
+        String[] column = randomColumn(new Random(4), 100, 20);
+        Utf8Column utf8Column = Utf8Column.encode(column, column.length);
+
+        assertEquals(1, utf8Column.chunks.size());
+        assertEquals(countBytes(column), utf8Column.getCapacity());
+        assertEquals(0, Utf8Column.encode(new String[10], 10).getCapacity());
+    }
+
+    // Columns over a chunk are split, with no more than a string's worth of slack per chunk
+    @Test
+    public void largeColumnIsSplitIntoChunks() {
+        String[] column = randomColumn(new Random(5), 60_000, 40);
+        column[7] = new String(new char[Utf8Column.CHUNK_SIZE]).replace('\0', 'x');
+        Utf8Column utf8Column = Utf8Column.encode(column, column.length);
+
+        long bytes = countBytes(column);
+        assertTrue(utf8Column.chunks.size() > 1);
+        assertTrue(utf8Column.getCapacity() >= bytes);
+        assertTrue(utf8Column.getCapacity() < bytes + utf8Column.chunks.size() * (Utf8Column.LENGTH_SIZE + 40 * 4));
+        assertEquals(column[7], utf8Column.getString(7));
+        for (int row = 0; row < column.length; row++) {
+            if (column[row] != null) assertEquals(column[row].getBytes(StandardCharsets.UTF_8).length, utf8Column.getLength(row));
+        }
+    }
+
+    // Strings set one at a time read back as set, after being replaced, removed and copied
+    @Test
+    public void setMatchesEncode() {
+        String[] column = randomColumn(new Random(6), 5000, 30);
+        // Unpaired surrogates read back as '?'
+        for (int row = 0; row < column.length; row++) {
+            if (column[row] != null) column[row] = new String(column[row].getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+        }
+        Utf8Column utf8Column = new Utf8Column();
+        for (int row = 0; row < column.length; row++) {
+            utf8Column.set(row, column[row]);
+        }
+        assertEquals(countBytes(column), countBytes(column, utf8Column));
+        assertTrue(utf8Column.chunks.size() > 1);
+        assertTrue(utf8Column.chunks.get(0).capacity() < Utf8Column.CHUNK_SIZE);
+
+        Utf8Column copy = utf8Column.copy();
+        copy.set(1, "Replaced");
+        copy.set(2, null);
+        copy.set(column.length + 10, "Past the end");
+        utf8Column.set(3, "Original");
+
+        assertEquals("Replaced", copy.getString(1));
+        assertFalse(copy.has(2));
+        assertEquals("Past the end", copy.getString(column.length + 10));
+        assertFalse(copy.has(column.length + 9));
+        assertEquals(column[3], copy.getString(3));
+        assertEquals(column[1], utf8Column.getString(1));
+        assertEquals(column[2], utf8Column.getString(2));
+        assertFalse(utf8Column.has(column.length + 10));
+        assertEquals("Original", utf8Column.getString(3));
+
+        copy.set(4, "");
+        copy.removeEmpty();
+        assertFalse(copy.has(4));
+        for (int row = 5; row < column.length; row++) {
+            if (column[row] == null || column[row].isEmpty()) {
+                assertFalse(copy.has(row));
+            } else {
+                assertEquals(column[row], copy.getString(row));
+            }
+        }
+    }
+
+    protected static long countBytes(String[] column, Utf8Column utf8Column) {
+        long bytes = 0;
+        for (int row = 0; row < column.length; row++) {
+            assertEquals(column[row], utf8Column.getString(row));
+            if (utf8Column.has(row)) bytes += Utf8Column.LENGTH_SIZE + utf8Column.getLength(row);
+        }
+        return bytes;
+    }
+
+}
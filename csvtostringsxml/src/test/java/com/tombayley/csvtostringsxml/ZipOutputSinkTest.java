@@ -0,0 +1,170 @@
+package com.tombayley.csvtostringsxml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * ZipOutputSink writes the zip format itself, so its archives are read back with java.util.zip.
+ */
+public class ZipOutputSinkTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // Path to contents, with an empty file, a large one and a non-ASCII name
+    protected static TreeMap<String, byte[]> files() {
+        TreeMap<String, byte[]> files = new TreeMap<>();
+        files.put("values/strings.xml", "<resources>\n    <string name=\"a\">A</string>\n</resources>\n".getBytes(StandardCharsets.UTF_8));
+        files.put("values-de/strings.xml", "<resources>\n    <string name=\"a\">\u00c4</string>\n</resources>\n".getBytes(StandardCharsets.UTF_8));
+        files.put("values-ja/strings.xml", new byte[0]);
+        files.put("values-b+\u00e9/strings.xml", "x".getBytes(StandardCharsets.UTF_8));
+
+        byte[] large = new byte[300 * 1024];
+        new Random(1).nextBytes(large);
+        files.put("values-ru/strings.xml", large);
+        return files;
+    }
+
+    protected static void writeAll(ZipOutputSink sink, TreeMap<String, byte[]> files) throws IOException {
+        for (String path : files.keySet()) {
+            sink.write(path, path, files.get(path));
+        }
+        sink.finish();
+    }
+
+    @Test
+    public void zipFileReadsEveryCompressionLevel() throws IOException {
+        TreeMap<String, byte[]> files = files();
+
+        for (int level : new int[]{Deflater.NO_COMPRESSION, 1, Deflater.DEFAULT_COMPRESSION, 9}) {
+            File file = temporaryFolder.newFile("level" + level + ".zip");
+            writeAll(new ZipOutputSink(file.toPath(), level, CsvToStringsXml.FsyncPolicy.NONE).setEntryPrefix("res/"), files);
+
+            ZipFile zipFile = new ZipFile(file, StandardCharsets.UTF_8);
+            try {
+                List<String> names = new ArrayList<>();
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    names.add(entry.getName());
+
+                    byte[] expected = files.get(entry.getName().substring("res/".length()));
+                    CRC32 crc = new CRC32();
+                    crc.update(expected);
+                    assertEquals(entry.getName(), expected.length, entry.getSize());
+                    assertEquals(entry.getName(), crc.getValue(), entry.getCrc());
+                    assertArrayEquals(entry.getName(), expected, readFully(zipFile.getInputStream(entry)));
+                }
+
+                List<String> expectedNames = new ArrayList<>();
+                for (String path : files.keySet()) {
+                    expectedNames.add("res/" + path);
+                }
+                assertEquals(expectedNames, names);
+            } finally {
+                zipFile.close();
+            }
+        }
+    }
+
+    // Readers that only go through the local headers, without the central directory
+    @Test
+    public void zipInputStreamReadsStream() throws IOException {
+        TreeMap<String, byte[]> files = files();
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        writeAll(new ZipOutputSink(zip, Deflater.DEFAULT_COMPRESSION), files);
+
+        TreeMap<String, byte[]> read = new TreeMap<>();
+        ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()), StandardCharsets.UTF_8);
+        for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+            read.put(entry.getName(), readFully(in));
+        }
+        in.close();
+
+        assertEquals(files.keySet(), read.keySet());
+        for (String path : files.keySet()) {
+            assertArrayEquals(path, files.get(path), read.get(path));
+        }
+    }
+
+    @Test
+    public void sameFilesGiveSameBytesInAnyOrder() throws IOException {
+        TreeMap<String, byte[]> files = files();
+        List<String> paths = new ArrayList<>(files.keySet());
+
+        ByteArrayOutputStream sorted = new ByteArrayOutputStream();
+        writeAll(new ZipOutputSink(sorted, Deflater.DEFAULT_COMPRESSION), files);
+
+        Collections.reverse(paths);
+        ByteArrayOutputStream reversed = new ByteArrayOutputStream();
+        ZipOutputSink sink = new ZipOutputSink(reversed, Deflater.DEFAULT_COMPRESSION);
+        for (String path : paths) {
+            sink.write(path, path, files.get(path));
+        }
+        sink.finish();
+
+        assertArrayEquals(sorted.toByteArray(), reversed.toByteArray());
+    }
+
+    @Test
+    public void writeReportsUnchangedEntries() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "strings.zip");
+        byte[] en = "en".getBytes(StandardCharsets.UTF_8);
+        byte[] de = "de".getBytes(StandardCharsets.UTF_8);
+
+        ZipOutputSink first = new ZipOutputSink(file.toPath(), Deflater.DEFAULT_COMPRESSION, CsvToStringsXml.FsyncPolicy.NONE);
+        assertTrue(first.write("en", "values/strings.xml", en));
+        assertTrue(first.write("de", "values-de/strings.xml", de));
+        first.finish();
+
+        ZipOutputSink second = new ZipOutputSink(file.toPath(), Deflater.DEFAULT_COMPRESSION, CsvToStringsXml.FsyncPolicy.NONE);
+        assertFalse(second.write("en", "values/strings.xml", en));
+        assertTrue(second.write("de", "values-de/strings.xml", "changed".getBytes(StandardCharsets.UTF_8)));
+        assertTrue(second.write("fr", "values-fr/strings.xml", en));
+        second.finish();
+
+        // Files that aren't archives count as changed
+        Files.write(file.toPath(), "not a zip".getBytes(StandardCharsets.UTF_8));
+        ZipOutputSink third = new ZipOutputSink(file.toPath(), Deflater.DEFAULT_COMPRESSION, CsvToStringsXml.FsyncPolicy.NONE);
+        assertTrue(third.write("en", "values/strings.xml", en));
+
+        // A stream has nothing to compare with
+        assertTrue(new ZipOutputSink(new ByteArrayOutputStream(), 0).write("en", "values/strings.xml", en));
+    }
+
+    protected static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8 * 1024];
+        int length;
+        while ((length = in.read(chunk)) != -1) {
+            bytes.write(chunk, 0, length);
+        }
+        return bytes.toByteArray();
+    }
+
+}